@@ -2,12 +2,17 @@ package main.java;
 
 import main.java.gui.MainFrame;
 import main.java.controller.SearchController;
+import main.java.loader.BusinessSnapshot;
 import main.java.loader.DataLoader;
 import main.java.model.Business;
 import main.java.loader.PersistentHashTable;
-import main.java.model.Review;
+import main.java.loader.NamePrefixIndex;
+import main.java.loader.ClusteredReviewStore;
+import main.java.loader.ReviewCache;
 import main.java.geo.PathFinder;
 import main.java.geo.BusinessLinker;
+import main.java.service.SimilarityTable;
+import main.java.service.TfIdfVectorStore;
 
 import javax.swing.*;
 import java.io.File;
@@ -16,6 +21,9 @@ import java.util.List;
 import java.util.Map;
 
 public class Main {
+    // Default heap budget for cached reviews
+    private static final long DEFAULT_REVIEW_CACHE_MEGABYTES = 64;
+
     public static void main(String[] args) {
         try {
             File businessMapFile = new File(DataLoader.BUSINESS_MAP_PATH);
@@ -24,26 +32,35 @@ public class Main {
             List<Business> businesses;
             Map<String, List<String>> clusters;
 
-            // Load business data
+            // Ingest whatever changed in the business JSON since the last run (nothing is parsed if it didn't change),
+            // then start from the business snapshot
             DataLoader.loadBusinessData();
+            BusinessSnapshot snapshot = DataLoader.openBusinessSnapshot();
 
-            // Load serialized businesses
-            businesses = DataLoader.loadSerializedBusinessData();
+            // Businesses are built from the mapped snapshot as they're used, the business store is the fallback
+            businesses = snapshot != null ? snapshot.asList() : DataLoader.loadSerializedBusinessData();
             if (businesses.isEmpty()) {
                 JOptionPane.showMessageDialog(null, "No businesses loaded. Exiting.", "Error", JOptionPane.ERROR_MESSAGE);
                 return;
             }
 
-            // Link businesses with their geographical neighbors
-            BusinessLinker linker = new BusinessLinker();
-            linker.linkBusinesses(businesses);  // This adds neighbors to each business
+            // The snapshot keeps the neighbours linked at ingest and a business looks its own up when they're first
+            // used, businesses from the store are linked with their geographical neighbors here
+            int connectedComponents;
+            if (snapshot != null) {
+                connectedComponents = snapshot.getNumberOfConnectedComponents();
+            } else {
+                BusinessLinker linker = new BusinessLinker();
+                linker.linkBusinesses(businesses);  // This adds neighbors to each business
+                connectedComponents = linker.getNumberOfConnectedComponents();
+            }
 
             // Load and serialize review data, passing the list of businesses
             DataLoader.loadAndSerializeReviewData(businesses);
 
             // Check and load the business map
             if (businessMapFile.exists()) {
-                businessMap = PersistentHashTable.deserializeFromFile(DataLoader.BUSINESS_MAP_PATH);
+                businessMap = PersistentHashTable.openMapped(DataLoader.BUSINESS_MAP_PATH);
             } else {
                 JOptionPane.showMessageDialog(null, "Business map file does not exist. Exiting.", "Error", JOptionPane.ERROR_MESSAGE);
                 return;
@@ -57,20 +74,49 @@ public class Main {
             // Load clusters
             clusters = DataLoader.loadClusters();
 
-            // Load serialized review data again to ensure all are up to date
-            List<Review> reviews = DataLoader.loadSerializedReviewData();
+            // Open the reviews laid out by business, a business's reviews are read from disk in one go when needed
+            if (!ClusteredReviewStore.exists(DataLoader.CLUSTERED_REVIEW_PATH)) {
+                JOptionPane.showMessageDialog(null, "No reviews loaded. Exiting.", "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            ClusteredReviewStore reviewStore = ClusteredReviewStore.open(DataLoader.CLUSTERED_REVIEW_PATH);
 
-            if (reviews.isEmpty()) {
+            if (reviewStore.isEmpty()) {
                 JOptionPane.showMessageDialog(null, "No reviews loaded. Exiting.", "Error", JOptionPane.ERROR_MESSAGE);
                 return;
             }
 
+            // Only the reviews of recently used businesses stay in memory, run with -DreviewCacheMegabytes=N to change the budget
+            ReviewCache reviewCache = new ReviewCache(reviewStore, Long.getLong("reviewCacheMegabytes", DEFAULT_REVIEW_CACHE_MEGABYTES) * 1024 * 1024);
+
+            // Load the TF-IDF vectors that were computed at ingest time
+            File vectorFile = new File(DataLoader.VECTOR_DATA_PATH);
+            if (!vectorFile.exists()) {
+                JOptionPane.showMessageDialog(null, "TF-IDF vector file does not exist. Exiting.", "Error", JOptionPane.ERROR_MESSAGE);
+                return;
+            }
+            TfIdfVectorStore vectorStore = TfIdfVectorStore.deserializeFromFile(DataLoader.VECTOR_DATA_PATH);
+
             PathFinder pathFinder = new PathFinder();
 
             // Setup and start the GUI
-            SearchController searchController = new SearchController(businesses, reviews, clusters, businessMap);
+            SearchController searchController = new SearchController(businesses, reviewCache, vectorStore, clusters, businessMap);
+            if (snapshot != null) {
+                // Businesses are found through the snapshot's ID index instead of a map over all of them
+                searchController.setBusinessLookup(snapshot::findBusiness);
+            }
+
+            // Use the precomputed similarity table if the batch job has been run
+            if (new File(DataLoader.SIMILARITY_TABLE_PATH).exists()) {
+                searchController.setSimilarityTable(SimilarityTable.readFromFile(DataLoader.SIMILARITY_TABLE_PATH));
+            }
+
+            // Name completions for the search box, searching still works by the full name without them
+            if (NamePrefixIndex.hasCurrentFormat(DataLoader.NAME_INDEX_PATH)) {
+                searchController.setNameIndex(NamePrefixIndex.open(DataLoader.NAME_INDEX_PATH));
+            }
             SwingUtilities.invokeLater(() -> {
-                MainFrame mainFrame = new MainFrame(searchController, pathFinder, linker);  // Include BusinessLinker instance
+                MainFrame mainFrame = new MainFrame(searchController, pathFinder, connectedComponents);
                 mainFrame.setVisible(true);
             });
         } catch (Exception e) {
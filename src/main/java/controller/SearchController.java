@@ -1,63 +1,319 @@
 package main.java.controller;
 
 import main.java.loader.DataLoader;
+import main.java.loader.NamePrefixIndex;
 import main.java.loader.PersistentHashTable;
+import main.java.loader.ReviewCache;
 import main.java.model.Business;
-import main.java.model.Review;
+import main.java.service.InvertedIndex;
+import main.java.service.MinHashIndex;
 import main.java.service.SimilarityCalculator;
+import main.java.service.SimilarityTable;
+import main.java.service.TfIdfVectorStore;
+import main.java.service.TrigramIndex;
 
 import java.util.*;
+import java.util.function.Function;
 import java.util.stream.Collectors;
 
 public class SearchController {
+    // How similar businesses are found: EXACT scores every business, PRUNED uses the inverted index
+    // (same results, fewer businesses scored), APPROXIMATE only re-ranks MinHash/LSH candidates
+    public enum SearchMode { EXACT, PRUNED, APPROXIMATE }
+
+    private static final int RECALL_SAMPLE_SIZE = 50;
+    private static final int CACHE_MAX_ENTRIES = 1000;
+    private static final long CACHE_MAX_BYTES = 4L * 1024 * 1024;
+    private static final int COMPLETION_LIMIT = 8;
+
     private SimilarityCalculator similarityCalculator;
     private List<Business> allBusinesses;
-    private List<Review> allReviews;
+    private ReviewCache reviewCache;
+    private TfIdfVectorStore vectorStore;
+    private InvertedIndex invertedIndex;
+    private MinHashIndex minHashIndex;
+    private TrigramIndex trigramIndex;
+    private SearchMode searchMode = SearchMode.PRUNED;
+    // Recall of the approximate mode from the last time it was selected, NaN until then
+    private double approximateRecall = Double.NaN;
     private Map<String, List<String>> clusters;
     private PersistentHashTable businessMap;
+    private SimilarityTable similarityTable;
+    private NamePrefixIndex nameIndex;
+    // Finds a business by ID, a map over every business is built on first use unless a lookup was set
+    private Function<String, Business> businessLookup;
+    private final SearchResultCache resultCache = new SearchResultCache(CACHE_MAX_ENTRIES, CACHE_MAX_BYTES);
 
     // Constructor
-    public SearchController(List<Business> businesses, List<Review> reviews, Map<String, List<String>> clusters, PersistentHashTable businessMap) {
+    public SearchController(List<Business> businesses, ReviewCache reviewCache, TfIdfVectorStore vectorStore, Map<String, List<String>> clusters, PersistentHashTable businessMap) {
         this.similarityCalculator = new SimilarityCalculator();
+        reloadData(businesses, reviewCache, vectorStore, clusters, businessMap);
+    }
+
+    // Swaps in a freshly loaded dataset and drops every cached result. The indexes over it are built the first time
+    // a search needs them, so nothing here walks the businesses.
+    public void reloadData(List<Business> businesses, ReviewCache reviewCache, TfIdfVectorStore vectorStore, Map<String, List<String>> clusters, PersistentHashTable businessMap) {
         this.allBusinesses = businesses;
-        this.allReviews = reviews;
+        this.reviewCache = reviewCache;
+        this.vectorStore = vectorStore;
+        this.invertedIndex = null;
+        this.minHashIndex = null;
+        this.approximateRecall = Double.NaN;
+        this.trigramIndex = null;
+        this.similarityTable = null;
+        this.nameIndex = null;
+        this.businessLookup = null;
         this.clusters = clusters;
         this.businessMap = businessMap;
+        resultCache.invalidate();
     }
 
-    // Finds and returns a list of businesses similar to the given business name
+    // Returns every business with the given name, e.g. all locations of a chain
+    public List<Business> findBusinessesByName(String name) {
+        return businessMap.getAll(name.toLowerCase()).stream()
+                .map(this::findBusiness)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    // Finds the businesses of the closest name, for when no business has the exact name. A cut-off name gets the
+    // most reviewed name it's the start of, anything else the closest name within a few typos. Returns an empty
+    // list if no name is close enough.
+    public List<Business> findBusinessesByApproximateName(String name) {
+        // The trigram index only allows a few edits in total, so it can't tell "starb" is short for "starbucks"
+        if (nameIndex != null && !name.isBlank()) {
+            List<String> completions = nameIndex.complete(name, 1);
+            if (!completions.isEmpty()) {
+                return findBusinessesByName(completions.get(0));
+            }
+        }
+        List<TrigramIndex.Match> closest = getTrigramIndex().findClosest(name, TrigramIndex.DEFAULT_LIMIT);
+        return closest.isEmpty() ? List.of() : findBusinessesByName(closest.get(0).getName());
+    }
+
+    // Finds and returns a list of businesses similar to the given business name, across every business with that name
     public List<Business> findSimilarBusinesses(String searchName) {
         String searchNameLower = searchName.toLowerCase();
-        String businessId = businessMap.get(searchNameLower);
-        System.out.println("Retrieving business ID for '" + searchNameLower + "': " + businessId);
-        // If business ID is not found, return an empty list
-        if (businessId == null) {
+        List<Business> matchedBusinesses = findBusinessesByName(searchNameLower);
+        System.out.println("Retrieving business IDs for '" + searchNameLower + "': " + matchedBusinesses.size() + " found");
+        // A misspelled or cut-off name gets the closest name instead
+        if (matchedBusinesses.isEmpty()) {
+            matchedBusinesses = findBusinessesByApproximateName(searchNameLower);
+            if (!matchedBusinesses.isEmpty()) {
+                searchNameLower = matchedBusinesses.get(0).getName().toLowerCase();
+                System.out.println("No exact match, using the closest name: " + searchNameLower);
+            }
+        }
+        // If no business has the name or one close to it, return an empty list
+        if (matchedBusinesses.isEmpty()) {
             System.out.println("No businesses found with the name: " + searchNameLower);
             return List.of();
         }
 
-        // Retrieve matched businesses based on ID
-        List<Business> matchedBusinesses = allBusinesses.stream()
-                .filter(business -> business.getBusiness_id().equals(businessId))
-                .collect(Collectors.toList());
-
         System.out.println("Matched businesses count: " + matchedBusinesses.size());
-        matchedBusinesses.forEach(business -> {
-            List<Review> reviewsForBusiness = allReviews.stream()
-                    .filter(review -> review.getBusiness_id().equals(business.getBusiness_id()))
-                    .collect(Collectors.toList());
-            System.out.println("Found " + reviewsForBusiness.size() + " reviews for business ID: " + business.getBusiness_id());
-        });
+        // The counts come from the store's index, nothing is read or decoded just to log them
+        matchedBusinesses.forEach(business -> System.out.println("Found " + reviewCache.getReviewCount(business.getBusiness_id())
+                + " reviews for business ID: " + business.getBusiness_id()));
 
         // Return a list of businesses that are similar to the matched businesses
+        Map<Business, List<Business>> similarByMatch = findSimilarCached(matchedBusinesses);
+        String matchedName = searchNameLower;
         return matchedBusinesses.stream()
-                .flatMap(business -> similarityCalculator.findSimilarBusinesses(business, allBusinesses, allReviews).stream())
-                .filter(similarBusiness -> !similarBusiness.getName().toLowerCase().equals(searchNameLower))
+                .flatMap(business -> similarByMatch.get(business).stream())
+                .filter(similarBusiness -> !similarBusiness.getName().toLowerCase().equals(matchedName))
                 .distinct()
                 .peek(business -> System.out.println("Found similar business: " + business.getName()))
                 .collect(Collectors.toList());
     }
 
+    // Returns the similarity results for each business, from the cache or the similarity table where possible,
+    // with the rest found together in one batched search
+    private Map<Business, List<Business>> findSimilarCached(List<Business> businesses) {
+        Map<Business, List<Business>> results = new LinkedHashMap<>();
+        List<Business> misses = new ArrayList<>();
+        for (Business business : businesses) {
+            List<Business> cached = resultCache.get(cacheKey(business));
+            if (cached != null) {
+                System.out.println("Cache hit for business ID: " + business.getBusiness_id() + " " + resultCache);
+                results.put(business, cached);
+                continue;
+            }
+            List<Business> fromTable = lookupSimilarityTable(business);
+            if (fromTable != null) {
+                resultCache.put(cacheKey(business), fromTable);
+                results.put(business, fromTable);
+            } else {
+                misses.add(business);
+            }
+        }
+        if (!misses.isEmpty()) {
+            Map<Business, List<Business>> found = findSimilarTo(misses, searchMode);
+            for (Business business : misses) {
+                List<Business> similarBusinesses = found.getOrDefault(business, Collections.emptyList());
+                resultCache.put(cacheKey(business), similarBusinesses);
+                results.put(business, similarBusinesses);
+            }
+        }
+        return results;
+    }
+
+    private SearchResultCache.Key cacheKey(Business business) {
+        return new SearchResultCache.Key(business.getBusiness_id(), SimilarityCalculator.DEFAULT_RESULT_LIMIT,
+                SimilarityCalculator.TEXT_WEIGHT, SimilarityCalculator.CATEGORY_WEIGHT, searchMode);
+    }
+
+    // Answers from the precomputed table when it holds exact results for this business, otherwise returns null
+    private List<Business> lookupSimilarityTable(Business business) {
+        if (similarityTable == null || searchMode == SearchMode.APPROXIMATE
+                || similarityTable.getK() < SimilarityCalculator.DEFAULT_RESULT_LIMIT) {
+            return null;
+        }
+        List<String> similarIds = similarityTable.getSimilarIds(business.getBusiness_id(), SimilarityCalculator.DEFAULT_RESULT_LIMIT);
+        if (similarIds == null) {
+            return null;
+        }
+        System.out.println("Answered from the similarity table for business ID: " + business.getBusiness_id());
+        return similarIds.stream()
+                .map(this::findBusiness)
+                .filter(Objects::nonNull)
+                .collect(Collectors.toList());
+    }
+
+    // Sets how businesses are found by ID, e.g. through the snapshot's ID index, so no map over all of them is needed
+    public void setBusinessLookup(Function<String, Business> businessLookup) {
+        this.businessLookup = businessLookup;
+    }
+
+    // Returns the business with the ID, or null if there is none
+    private Business findBusiness(String businessId) {
+        if (businessLookup == null) {
+            Map<String, Business> businessesById = new HashMap<>(allBusinesses.size() * 2);
+            for (Business business : allBusinesses) {
+                businessesById.put(business.getBusiness_id(), business);
+            }
+            businessLookup = businessesById::get;
+        }
+        return businessLookup.apply(businessId);
+    }
+
+    // Sets the precomputed top-k table built by SimilarityTableBuilder, must match the current dataset
+    public void setSimilarityTable(SimilarityTable similarityTable) {
+        this.similarityTable = similarityTable;
+        resultCache.invalidate();
+    }
+
+    // Sets the name prefix index written at ingest, must match the current dataset
+    public void setNameIndex(NamePrefixIndex nameIndex) {
+        this.nameIndex = nameIndex;
+    }
+
+    // Returns business names starting with what has been typed so far, most reviewed first
+    public List<String> getNameCompletions(String prefix) {
+        if (nameIndex == null || prefix.isBlank()) {
+            return Collections.emptyList();
+        }
+        return nameIndex.complete(prefix, COMPLETION_LIMIT);
+    }
+
+    public SearchResultCache getResultCache() {
+        return resultCache;
+    }
+
+    public ReviewCache getReviewCache() {
+        return reviewCache;
+    }
+
+    // Runs the similarity search for several businesses. The exact mode scores all of them in one pass over the
+    // catalog, the index-based modes only touch a few candidates per business so they run one query each.
+    private Map<Business, List<Business>> findSimilarTo(List<Business> businesses, SearchMode mode) {
+        if (mode == SearchMode.EXACT) {
+            return similarityCalculator.findSimilarBusinesses(businesses, allBusinesses, vectorStore);
+        }
+        Map<Business, List<Business>> results = new LinkedHashMap<>();
+        for (Business business : businesses) {
+            results.put(business, findSimilarTo(business, mode));
+        }
+        return results;
+    }
+
+    // Runs the similarity search for one business using the given mode
+    private List<Business> findSimilarTo(Business business, SearchMode mode) {
+        switch (mode) {
+            case EXACT:
+                return similarityCalculator.findSimilarBusinesses(business, allBusinesses, vectorStore);
+            case APPROXIMATE:
+                return similarityCalculator.findSimilarBusinesses(business, getMinHashIndex());
+            default:
+                return similarityCalculator.findSimilarBusinesses(business, getInvertedIndex());
+        }
+    }
+
+    // Builds the inverted index the first time the pruned mode needs it
+    private InvertedIndex getInvertedIndex() {
+        if (invertedIndex == null) {
+            invertedIndex = new InvertedIndex(allBusinesses, vectorStore);
+        }
+        return invertedIndex;
+    }
+
+    // Builds the MinHash index the first time the approximate mode needs it
+    private MinHashIndex getMinHashIndex() {
+        if (minHashIndex == null) {
+            minHashIndex = new MinHashIndex(allBusinesses, vectorStore);
+        }
+        return minHashIndex;
+    }
+
+    // Builds the trigram index the first time a name lookup misses
+    private TrigramIndex getTrigramIndex() {
+        if (trigramIndex == null) {
+            trigramIndex = new TrigramIndex(allBusinesses);
+        }
+        return trigramIndex;
+    }
+
+    // Switches the search mode, reporting the recall of the approximate mode when it gets selected
+    public void setSearchMode(SearchMode searchMode) {
+        this.searchMode = searchMode;
+        System.out.println("Search mode set to " + searchMode);
+        if (searchMode == SearchMode.APPROXIMATE) {
+            approximateRecall = measureApproximateRecall(RECALL_SAMPLE_SIZE);
+        }
+    }
+
+    public SearchMode getSearchMode() {
+        return searchMode;
+    }
+
+    // Returns the recall measured when the approximate mode was last selected, or NaN if it never was
+    public double getApproximateRecall() {
+        return approximateRecall;
+    }
+
+    // Measures the average recall of the approximate mode against the exact results over a sample of businesses
+    public double measureApproximateRecall(int sampleSize) {
+        List<Business> sample = new ArrayList<>(allBusinesses);
+        Collections.shuffle(sample, new Random(sampleSize));
+        double recallSum = 0.0;
+        int measured = 0;
+        for (Business business : sample) {
+            if (measured == sampleSize) {
+                break;
+            }
+            List<Business> exact = findSimilarTo(business, SearchMode.PRUNED);
+            if (exact.isEmpty()) {
+                continue;
+            }
+            Set<Business> approximate = new HashSet<>(findSimilarTo(business, SearchMode.APPROXIMATE));
+            long found = exact.stream().filter(approximate::contains).count();
+            recallSum += (double) found / exact.size();
+            measured++;
+        }
+        double recall = measured == 0 ? 0.0 : recallSum / measured;
+        System.out.println("Approximate search recall over " + measured + " businesses: " + String.format("%.3f", recall));
+        return recall;
+    }
+
     // Returns a set of all cluster names
     public Set<String> getClusters() {
         return clusters.keySet();
@@ -73,4 +329,9 @@ public class SearchController {
     public List<Business> getAllBusinesses() {
         return new ArrayList<>(allBusinesses);  // Return a copy of the list to prevent external modifications
     }
+
+    // Read-only view of the businesses, unlike getAllBusinesses this doesn't build every business of a snapshot
+    public List<Business> getBusinessList() {
+        return Collections.unmodifiableList(allBusinesses);
+    }
 }
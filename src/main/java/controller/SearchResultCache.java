@@ -0,0 +1,135 @@
+package main.java.controller;
+
+import main.java.model.Business;
+
+import java.util.*;
+
+// LRU cache of similarity results, bounded by both an entry count and an estimated memory size
+public class SearchResultCache {
+    // Rough per-entry overhead of the map entry, key and list, plus the size of one reference in a result list
+    private static final long ENTRY_OVERHEAD_BYTES = 160;
+    private static final long BYTES_PER_RESULT = 8;
+
+    private final int maxEntries;
+    private final long maxBytes;
+    private final LinkedHashMap<Key, List<Business>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private long currentBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    // Cache key: the resolved business and every parameter that changes the result
+    public static final class Key {
+        private final String businessId;
+        private final int k;
+        private final double textWeight;
+        private final double categoryWeight;
+        private final SearchController.SearchMode mode;
+
+        public Key(String businessId, int k, double textWeight, double categoryWeight, SearchController.SearchMode mode) {
+            this.businessId = businessId;
+            this.k = k;
+            this.textWeight = textWeight;
+            this.categoryWeight = categoryWeight;
+            this.mode = mode;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Key)) {
+                return false;
+            }
+            Key other = (Key) o;
+            return k == other.k
+                    && Double.compare(textWeight, other.textWeight) == 0
+                    && Double.compare(categoryWeight, other.categoryWeight) == 0
+                    && mode == other.mode
+                    && businessId.equals(other.businessId);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(businessId, k, textWeight, categoryWeight, mode);
+        }
+
+        // Estimated heap size of the key
+        long estimatedBytes() {
+            return 2L * businessId.length();
+        }
+    }
+
+    // Constructor
+    public SearchResultCache(int maxEntries, long maxBytes) {
+        this.maxEntries = maxEntries;
+        this.maxBytes = maxBytes;
+    }
+
+    // Returns the cached result for a key, or null on a miss
+    public synchronized List<Business> get(Key key) {
+        List<Business> result = entries.get(key);
+        if (result == null) {
+            misses++;
+        } else {
+            hits++;
+        }
+        return result;
+    }
+
+    // Stores a result, evicting the least recently used entries until both bounds hold again
+    public synchronized void put(Key key, List<Business> result) {
+        List<Business> stored = List.copyOf(result);
+        List<Business> previous = entries.put(key, stored);
+        if (previous != null) {
+            currentBytes -= estimateBytes(key, previous);
+        }
+        currentBytes += estimateBytes(key, stored);
+
+        Iterator<Map.Entry<Key, List<Business>>> eldest = entries.entrySet().iterator();
+        while ((entries.size() > maxEntries || currentBytes > maxBytes) && eldest.hasNext()) {
+            Map.Entry<Key, List<Business>> entry = eldest.next();
+            currentBytes -= estimateBytes(entry.getKey(), entry.getValue());
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    // Drops every entry, used when the data the results were computed from changes
+    public synchronized void invalidate() {
+        entries.clear();
+        currentBytes = 0;
+        System.out.println("Search result cache invalidated.");
+    }
+
+    private static long estimateBytes(Key key, List<Business> result) {
+        return ENTRY_OVERHEAD_BYTES + key.estimatedBytes() + BYTES_PER_RESULT * result.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getEstimatedBytes() {
+        return currentBytes;
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "SearchResultCache[entries=" + entries.size() + ", bytes=" + currentBytes + ", hits=" + hits
+                + ", misses=" + misses + ", evictions=" + evictions + "]";
+    }
+}
@@ -3,18 +3,24 @@ package main.java.gui;
 import main.java.model.Business;
 import main.java.controller.SearchController;
 import main.java.geo.PathFinder;
-import main.java.geo.BusinessLinker;
 
 import javax.swing.*;
+import javax.swing.event.DocumentEvent;
+import javax.swing.event.DocumentListener;
 import java.awt.*;
 import java.awt.event.ActionEvent;
+import java.awt.event.KeyEvent;
 import java.util.*;
 import java.util.List;
 
 public class MainFrame extends JFrame {
     // Declaration of all the components and controllers used in the GUI
     private JTextField searchTextField;
+    private JPopupMenu suggestionPopup;
+    // Set while a picked suggestion is put in the search box, so that doesn't ask for suggestions again
+    private boolean fillingSuggestion;
     private JButton searchButton;
+    private JComboBox<SearchController.SearchMode> searchModeComboBox;
     private JEditorPane resultsEditorPane;
     private SearchController searchController;
     private JComboBox<String> clusterComboBox;
@@ -24,13 +30,13 @@ public class MainFrame extends JFrame {
     private JButton findPathButton;
     private JButton reportConnectivityButton;
     private PathFinder pathFinder;
-    private BusinessLinker businessLinker;
+    private int numberOfComponents;
 
     // Constructor to init the GUI frame with necessary controllers and utilities
-    public MainFrame(SearchController searchController, PathFinder pathFinder, BusinessLinker businessLinker) {
+    public MainFrame(SearchController searchController, PathFinder pathFinder, int numberOfComponents) {
         this.searchController = searchController;
         this.pathFinder = pathFinder;
-        this.businessLinker = businessLinker;
+        this.numberOfComponents = numberOfComponents;
         createView();
         setTitle("Business Recommendation System");
         setDefaultCloseOperation(EXIT_ON_CLOSE);
@@ -61,7 +67,6 @@ public class MainFrame extends JFrame {
 
     // Action handler for reporting connectivity
     private void reportConnectivity(ActionEvent e) {
-        int numberOfComponents = businessLinker.getNumberOfConnectedComponents();
         JOptionPane.showMessageDialog(this, "Number of connected components: " + numberOfComponents);
     }
 
@@ -86,7 +91,9 @@ public class MainFrame extends JFrame {
         JPanel pathPanel = new JPanel(new FlowLayout(FlowLayout.LEFT));
         pathPanel.add(new JLabel("Start Business:"));
 
-        startBusinessComboBox = new JComboBox<>(new Vector<>(searchController.getAllBusinesses()));
+        startBusinessComboBox = new JComboBox<>(new BusinessComboBoxModel(searchController.getBusinessList()));
+        // With a prototype the box isn't sized by measuring every business
+        startBusinessComboBox.setPrototypeDisplayValue(PROTOTYPE_BUSINESS);
         startBusinessComboBox.setRenderer(new DefaultListCellRenderer() {
             @Override
             public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
@@ -101,7 +108,8 @@ public class MainFrame extends JFrame {
         pathPanel.add(startBusinessComboBox);
         pathPanel.add(new JLabel("End Business:"));
 
-        endBusinessComboBox = new JComboBox<>(new Vector<>(searchController.getAllBusinesses()));
+        endBusinessComboBox = new JComboBox<>(new BusinessComboBoxModel(searchController.getBusinessList()));
+        endBusinessComboBox.setPrototypeDisplayValue(PROTOTYPE_BUSINESS);
         endBusinessComboBox.setRenderer(startBusinessComboBox.getRenderer());
         pathPanel.add(endBusinessComboBox);
 
@@ -112,6 +120,43 @@ public class MainFrame extends JFrame {
         mainPanel.add(pathPanel, BorderLayout.CENTER);
     }
 
+    // Stands in for the widest business name when the combo boxes are sized
+    private static final Business PROTOTYPE_BUSINESS = new Business(null, "Some Fairly Long Business Name", null, null,
+            null, null, 0, 0, 0, 0, 0, null, null, null, null);
+
+    // Combo box model that reads the business list in place instead of copying it, so only the businesses that
+    // are shown get built
+    private static class BusinessComboBoxModel extends AbstractListModel<Business> implements ComboBoxModel<Business> {
+        private final List<Business> businesses;
+        private Object selected;
+
+        BusinessComboBoxModel(List<Business> businesses) {
+            this.businesses = businesses;
+            this.selected = businesses.isEmpty() ? null : businesses.get(0);
+        }
+
+        @Override
+        public int getSize() {
+            return businesses.size();
+        }
+
+        @Override
+        public Business getElementAt(int index) {
+            return businesses.get(index);
+        }
+
+        @Override
+        public void setSelectedItem(Object item) {
+            selected = item;
+            fireContentsChanged(this, -1, -1);
+        }
+
+        @Override
+        public Object getSelectedItem() {
+            return selected;
+        }
+    }
+
     // Setup for the general search panel
     private void setupSearchPanel(JPanel mainPanel) {
         JPanel searchPanel = new JPanel(new BorderLayout(5, 5));
@@ -122,13 +167,128 @@ public class MainFrame extends JFrame {
         searchButton.addActionListener(this::onSearch);
         searchPanel.add(searchButton, BorderLayout.EAST);
 
-        mainPanel.add(searchPanel, BorderLayout.SOUTH);
+        // Exact, pruned or approximate search, picking approximate measures its recall first
+        searchModeComboBox = new JComboBox<>(SearchController.SearchMode.values());
+        searchModeComboBox.setSelectedItem(searchController.getSearchMode());
+        searchModeComboBox.addActionListener(this::onSearchModeChanged);
+        searchPanel.add(searchModeComboBox, BorderLayout.WEST);
+
+        setupSuggestions();
 
         resultsEditorPane = new JEditorPane();
         resultsEditorPane.setEditable(false);
         resultsEditorPane.setContentType("text/html");
         JScrollPane scrollPane = new JScrollPane(resultsEditorPane);
-        mainPanel.add(scrollPane, BorderLayout.SOUTH);
+
+        // The search box sits above the results, both in the bottom area of the frame
+        JPanel southPanel = new JPanel(new BorderLayout(5, 5));
+        southPanel.add(searchPanel, BorderLayout.NORTH);
+        southPanel.add(scrollPane, BorderLayout.CENTER);
+        mainPanel.add(southPanel, BorderLayout.SOUTH);
+    }
+
+    // Shows business names starting with what's typed in a popup under the search box, clicking one fills it in
+    private void setupSuggestions() {
+        suggestionPopup = new JPopupMenu();
+        // Keep the focus in the search box so typing carries on while the popup is open
+        suggestionPopup.setFocusable(false);
+        searchTextField.getDocument().addDocumentListener(new DocumentListener() {
+            @Override
+            public void insertUpdate(DocumentEvent e) {
+                onSearchTextChanged();
+            }
+
+            @Override
+            public void removeUpdate(DocumentEvent e) {
+                onSearchTextChanged();
+            }
+
+            @Override
+            public void changedUpdate(DocumentEvent e) {
+                // Attribute changes only, the text is the same
+            }
+        });
+        searchTextField.getInputMap().put(KeyStroke.getKeyStroke(KeyEvent.VK_ESCAPE, 0), "hideSuggestions");
+        searchTextField.getActionMap().put("hideSuggestions", new AbstractAction() {
+            @Override
+            public void actionPerformed(ActionEvent e) {
+                suggestionPopup.setVisible(false);
+            }
+        });
+    }
+
+    // Updates the suggestions once the edit is done, unless the edit was a picked suggestion being filled in
+    private void onSearchTextChanged() {
+        if (!fillingSuggestion) {
+            SwingUtilities.invokeLater(this::updateSuggestions);
+        }
+    }
+
+    // Looks up completions for the current text and shows them, or hides the popup if there are none
+    private void updateSuggestions() {
+        String typed = searchTextField.getText();
+        List<String> names = searchController.getNameCompletions(typed);
+        suggestionPopup.setVisible(false);
+        suggestionPopup.removeAll();
+        // Nothing to suggest once the whole name has been typed
+        if (names.isEmpty() || (names.size() == 1 && names.get(0).equalsIgnoreCase(typed.trim()))) {
+            return;
+        }
+        for (String name : names) {
+            JMenuItem item = new JMenuItem(name);
+            item.addActionListener(e -> chooseSuggestion(name));
+            suggestionPopup.add(item);
+        }
+        suggestionPopup.show(searchTextField, 0, searchTextField.getHeight());
+        searchTextField.requestFocusInWindow();
+    }
+
+    // Puts a picked name in the search box
+    private void chooseSuggestion(String name) {
+        fillingSuggestion = true;
+        try {
+            searchTextField.setText(name);
+        } finally {
+            fillingSuggestion = false;
+        }
+        suggestionPopup.setVisible(false);
+        searchTextField.requestFocusInWindow();
+    }
+
+    // Handler for switching the search mode, the recall check runs in the background since it does 2 searches per sampled business
+    private void onSearchModeChanged(ActionEvent e) {
+        SearchController.SearchMode mode = (SearchController.SearchMode) searchModeComboBox.getSelectedItem();
+        if (mode == null || mode == searchController.getSearchMode()) {
+            return;
+        }
+        setCursor(Cursor.getPredefinedCursor(Cursor.WAIT_CURSOR));
+        searchModeComboBox.setEnabled(false);
+        searchButton.setEnabled(false);
+        SwingWorker<Void, Void> worker = new SwingWorker<>() {
+            @Override
+            protected Void doInBackground() {
+                searchController.setSearchMode(mode);
+                return null;
+            }
+
+            @Override
+            protected void done() {
+                try {
+                    get();
+                    if (mode == SearchController.SearchMode.APPROXIMATE) {
+                        resultsEditorPane.setText("<html><body style='font-size:12px;'><p>Approximate search recall against exact results: "
+                                + String.format("%.3f", searchController.getApproximateRecall()) + "</p></body></html>");
+                    }
+                } catch (Exception ex) {
+                    JOptionPane.showMessageDialog(MainFrame.this, "Error switching search mode: " + ex.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+                } finally {
+                    searchModeComboBox.setEnabled(true);
+                    searchButton.setEnabled(true);
+                    setCursor(Cursor.getDefaultCursor());
+                }
+            }
+        };
+        worker.execute();
     }
 
     // Handler for showing businesses in the selected category
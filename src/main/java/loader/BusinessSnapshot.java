@@ -0,0 +1,373 @@
+package main.java.loader;
+
+import main.java.geo.UnionFind;
+import main.java.model.Business;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.AbstractList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.Function;
+
+// Read-only columnar snapshot of the business catalog. Opening it only maps the file and reads the header,
+// so startup doesn't depend on the number of businesses, and a field is only paged in when something reads it.
+// Layout: header (magic, version, count, column count, connected components, column offsets), then one column
+// after another:
+// - primitive columns: latitude, longitude (double), stars (float), review_count (int), is_open (byte)
+// - ID index: open-addressing table of ordinal + 1 (0 = empty slot), probed with the ID's hashCode
+// - string columns: null bitmap, count + 1 offsets (int) and the UTF-8 bytes
+// - details column: attributes and opening hours in RecordCodec's format, stored like a string column
+// - neighbours: count + 1 offsets (int) into [neighbour ordinal (int)][distance (double)] entries, as linked by
+//   BusinessLinker at ingest. A business only looks its neighbours up when they're asked for.
+public class BusinessSnapshot {
+    private static final int MAGIC = 0x42534E50; // "BSNP"
+    private static final int VERSION = 2;
+
+    // Column order in the file
+    private static final int LATITUDE = 0;
+    private static final int LONGITUDE = 1;
+    private static final int STARS = 2;
+    private static final int REVIEW_COUNT = 3;
+    private static final int IS_OPEN = 4;
+    private static final int ID_INDEX = 5;
+    private static final int BUSINESS_ID = 6;
+    private static final int NAME = 7;
+    private static final int ADDRESS = 8;
+    private static final int CITY = 9;
+    private static final int STATE = 10;
+    private static final int POSTAL_CODE = 11;
+    private static final int CATEGORIES = 12;
+    private static final int PHONE_NUMBER = 13;
+    private static final int DETAILS = 14;
+    private static final int NEIGHBORS = 15;
+    private static final int COLUMN_COUNT = 16;
+    private static final int HEADER_BYTES = 24 + COLUMN_COUNT * 8;
+    private static final int NEIGHBOR_BYTES = 12;
+
+    private final MappedByteBuffer buffer;
+    private final int count;
+    private final int componentCount;
+    private final int[] columnOffsets = new int[COLUMN_COUNT];
+    private final int indexCapacity;
+    // Businesses built so far, so every ordinal always gives back the same object
+    private final AtomicReferenceArray<Business> businesses;
+
+    private BusinessSnapshot(MappedByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a business snapshot file");
+        }
+        this.count = buffer.getInt(8);
+        this.componentCount = buffer.getInt(16);
+        for (int column = 0; column < COLUMN_COUNT; column++) {
+            columnOffsets[column] = (int) buffer.getLong(24 + column * 8);
+        }
+        this.indexCapacity = indexCapacity(count);
+        this.businesses = new AtomicReferenceArray<>(count);
+    }
+
+    // Maps a snapshot file, nothing but the header is read here
+    public static BusinessSnapshot open(String path) throws IOException {
+        try (FileChannel channel = FileChannel.open(Path.of(path), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Business snapshot is too large to map: " + path);
+            }
+            // The mapping stays valid after the channel is closed
+            return new BusinessSnapshot(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    // Returns true if the file exists and is a snapshot this version can read
+    public static boolean hasCurrentFormat(String path) {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(path))) {
+            return in.readInt() == MAGIC && in.readInt() == VERSION;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    public int size() {
+        return count;
+    }
+
+    // Number of groups of businesses connected through their neighbours, counted at ingest
+    public int getNumberOfConnectedComponents() {
+        return componentCount;
+    }
+
+    public double getLatitude(int ordinal) {
+        return buffer.getDouble(columnOffsets[LATITUDE] + ordinal * 8);
+    }
+
+    public double getLongitude(int ordinal) {
+        return buffer.getDouble(columnOffsets[LONGITUDE] + ordinal * 8);
+    }
+
+    public float getStars(int ordinal) {
+        return buffer.getFloat(columnOffsets[STARS] + ordinal * 4);
+    }
+
+    public int getReviewCount(int ordinal) {
+        return buffer.getInt(columnOffsets[REVIEW_COUNT] + ordinal * 4);
+    }
+
+    public boolean isOpen(int ordinal) {
+        return buffer.get(columnOffsets[IS_OPEN] + ordinal) != 0;
+    }
+
+    public String getBusinessId(int ordinal) {
+        return readString(BUSINESS_ID, ordinal);
+    }
+
+    public String getName(int ordinal) {
+        return readString(NAME, ordinal);
+    }
+
+    public String getCategories(int ordinal) {
+        return readString(CATEGORIES, ordinal);
+    }
+
+    // Finds the ordinal of a business ID through the stored hash index, returns -1 if it isn't in the snapshot
+    public int ordinalOf(String businessId) {
+        if (count == 0) {
+            return -1;
+        }
+        int slot = (businessId.hashCode() & 0x7FFFFFFF) % indexCapacity;
+        while (true) {
+            int ordinal = buffer.getInt(columnOffsets[ID_INDEX] + slot * 4) - 1;
+            if (ordinal < 0) {
+                return -1;
+            }
+            if (businessId.equals(getBusinessId(ordinal))) {
+                return ordinal;
+            }
+            slot = (slot + 1) % indexCapacity;
+        }
+    }
+
+    // Returns the business with the ID, or null if it isn't in the snapshot
+    public Business findBusiness(String businessId) {
+        int ordinal = ordinalOf(businessId);
+        return ordinal < 0 ? null : getBusiness(ordinal);
+    }
+
+    // Builds the business at an ordinal the first time it is asked for
+    public Business getBusiness(int ordinal) {
+        Business business = businesses.get(ordinal);
+        if (business != null) {
+            return business;
+        }
+        Business built = new Business(getBusinessId(ordinal), getName(ordinal), readString(ADDRESS, ordinal),
+                readString(CITY, ordinal), readString(STATE, ordinal), readString(POSTAL_CODE, ordinal),
+                getLatitude(ordinal), getLongitude(ordinal), getStars(ordinal), getReviewCount(ordinal),
+                isOpen(ordinal) ? 1 : 0, null, getCategories(ordinal), null, readString(PHONE_NUMBER, ordinal));
+        try {
+            RecordCodec.decodeDetails(readBytes(DETAILS, ordinal), built);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Corrupt business snapshot at ordinal " + ordinal, e);
+        }
+        // Linking now would build the neighbours, and theirs in turn, so they're only looked up when asked for
+        built.setNeighborLoader(loading -> linkNeighbors(ordinal, loading));
+        // Another thread may have built the same business meanwhile, keep whichever got in first
+        return businesses.compareAndSet(ordinal, null, built) ? built : businesses.get(ordinal);
+    }
+
+    // Adds the stored neighbours of an ordinal to its business
+    private void linkNeighbors(int ordinal, Business business) {
+        int base = columnOffsets[NEIGHBORS];
+        int entries = base + (count + 1) * 4;
+        int end = buffer.getInt(base + ordinal * 4 + 4);
+        for (int i = buffer.getInt(base + ordinal * 4); i < end; i++) {
+            int position = entries + i * NEIGHBOR_BYTES;
+            business.addNeighbor(getBusiness(buffer.getInt(position)), buffer.getDouble(position + 4));
+        }
+    }
+
+    // List view of the snapshot, businesses are built as they are read
+    public List<Business> asList() {
+        return new AbstractList<>() {
+            @Override
+            public Business get(int index) {
+                if (index < 0 || index >= count) {
+                    throw new IndexOutOfBoundsException(index);
+                }
+                return getBusiness(index);
+            }
+
+            @Override
+            public int size() {
+                return count;
+            }
+        };
+    }
+
+    private String readString(int column, int ordinal) {
+        byte[] bytes = readBytes(column, ordinal);
+        return bytes == null ? null : new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Reads one value of a string-like column, null if the value is null
+    private byte[] readBytes(int column, int ordinal) {
+        int base = columnOffsets[column];
+        if ((buffer.get(base + (ordinal >>> 3)) & (1 << (ordinal & 7))) != 0) {
+            return null;
+        }
+        int offsets = base + (count + 7) / 8;
+        int start = buffer.getInt(offsets + ordinal * 4);
+        int end = buffer.getInt(offsets + ordinal * 4 + 4);
+        byte[] bytes = new byte[end - start];
+        buffer.get(offsets + (count + 1) * 4 + start, bytes);
+        return bytes;
+    }
+
+    // Writes a snapshot of the businesses
+    public static void write(List<Business> businesses, String path) throws IOException {
+        int count = businesses.size();
+        ByteArrayOutputStream[] columns = new ByteArrayOutputStream[COLUMN_COUNT];
+        for (int column = 0; column < COLUMN_COUNT; column++) {
+            columns[column] = new ByteArrayOutputStream();
+        }
+        DataOutputStream latitude = new DataOutputStream(columns[LATITUDE]);
+        DataOutputStream longitude = new DataOutputStream(columns[LONGITUDE]);
+        DataOutputStream stars = new DataOutputStream(columns[STARS]);
+        DataOutputStream reviewCount = new DataOutputStream(columns[REVIEW_COUNT]);
+        for (Business business : businesses) {
+            latitude.writeDouble(business.getLatitude());
+            longitude.writeDouble(business.getLongitude());
+            stars.writeFloat(business.getStars());
+            reviewCount.writeInt(business.getReview_count());
+            columns[IS_OPEN].write(business.is_open() ? 1 : 0);
+        }
+        writeIdIndex(businesses, new DataOutputStream(columns[ID_INDEX]));
+        writeStringColumn(columns[BUSINESS_ID], businesses, Business::getBusiness_id);
+        writeStringColumn(columns[NAME], businesses, Business::getName);
+        writeStringColumn(columns[ADDRESS], businesses, Business::getAddress);
+        writeStringColumn(columns[CITY], businesses, Business::getCity);
+        writeStringColumn(columns[STATE], businesses, Business::getState);
+        writeStringColumn(columns[POSTAL_CODE], businesses, Business::getPostal_code);
+        writeStringColumn(columns[CATEGORIES], businesses, Business::getCategories);
+        writeStringColumn(columns[PHONE_NUMBER], businesses, Business::getPhoneNumber);
+        writeBytesColumn(columns[DETAILS], businesses, RecordCodec::encodeDetails);
+        int componentCount = writeNeighbors(businesses, new DataOutputStream(columns[NEIGHBORS]));
+
+        File snapshotFile = new File(path);
+        File snapshotDir = snapshotFile.getParentFile();
+        if (snapshotDir != null && !snapshotDir.exists() && !snapshotDir.mkdirs()) {
+            throw new IOException("Failed to create snapshot directory at " + snapshotDir.getAbsolutePath());
+        }
+        // Written to a temporary file first so a crash never leaves a half-written snapshot behind
+        File tempFile = new File(path + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(count);
+            out.writeInt(COLUMN_COUNT);
+            out.writeInt(componentCount);
+            out.writeInt(0);
+            long offset = HEADER_BYTES;
+            for (ByteArrayOutputStream column : columns) {
+                out.writeLong(offset);
+                offset += column.size();
+            }
+            if (offset > Integer.MAX_VALUE) {
+                throw new IOException("Too many businesses for one snapshot");
+            }
+            for (ByteArrayOutputStream column : columns) {
+                column.writeTo(out);
+            }
+        }
+        if (!tempFile.renameTo(snapshotFile)) {
+            snapshotFile.delete();
+            if (!tempFile.renameTo(snapshotFile)) {
+                throw new IOException("Failed to write business snapshot at " + snapshotFile.getAbsolutePath());
+            }
+        }
+        System.out.println("Wrote business snapshot of " + count + " businesses (" + snapshotFile.length() + " bytes).");
+    }
+
+    // The index is kept at most half full so probes stay short
+    private static int indexCapacity(int count) {
+        return Math.max(1, count * 2);
+    }
+
+    private static void writeIdIndex(List<Business> businesses, DataOutputStream out) throws IOException {
+        int capacity = indexCapacity(businesses.size());
+        int[] slots = new int[capacity];
+        for (int ordinal = 0; ordinal < businesses.size(); ordinal++) {
+            int slot = (businesses.get(ordinal).getBusiness_id().hashCode() & 0x7FFFFFFF) % capacity;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) % capacity;
+            }
+            slots[slot] = ordinal + 1;
+        }
+        for (int slot : slots) {
+            out.writeInt(slot);
+        }
+    }
+
+    // Writes every business's neighbours by ordinal and returns the number of connected components they form
+    private static int writeNeighbors(List<Business> businesses, DataOutputStream out) throws IOException {
+        Map<String, Integer> ordinals = new HashMap<>(businesses.size() * 2);
+        for (int ordinal = 0; ordinal < businesses.size(); ordinal++) {
+            ordinals.put(businesses.get(ordinal).getBusiness_id(), ordinal);
+        }
+        UnionFind components = new UnionFind(businesses.size());
+        ByteArrayOutputStream entryBytes = new ByteArrayOutputStream();
+        DataOutputStream entries = new DataOutputStream(entryBytes);
+        int entryCount = 0;
+        for (int ordinal = 0; ordinal < businesses.size(); ordinal++) {
+            out.writeInt(entryCount);
+            for (Map.Entry<Business, Double> neighbor : businesses.get(ordinal).getNeighbors().entrySet()) {
+                Integer neighborOrdinal = ordinals.get(neighbor.getKey().getBusiness_id());
+                // A neighbour that isn't in the catalog any more is left out
+                if (neighborOrdinal != null) {
+                    entries.writeInt(neighborOrdinal);
+                    entries.writeDouble(neighbor.getValue());
+                    entryCount++;
+                    components.union(ordinal, neighborOrdinal);
+                }
+            }
+        }
+        out.writeInt(entryCount);
+        entryBytes.writeTo(out);
+        return components.getCount();
+    }
+
+    private static void writeStringColumn(ByteArrayOutputStream column, List<Business> businesses,
+                                          Function<Business, String> field) throws IOException {
+        writeBytesColumn(column, businesses, business -> {
+            String value = field.apply(business);
+            return value == null ? null : value.getBytes(StandardCharsets.UTF_8);
+        });
+    }
+
+    // Null bitmap, then count + 1 offsets into the value bytes, then the value bytes
+    private static void writeBytesColumn(ByteArrayOutputStream column, List<Business> businesses,
+                                         Function<Business, byte[]> field) throws IOException {
+        int count = businesses.size();
+        byte[] nulls = new byte[(count + 7) / 8];
+        ByteArrayOutputStream values = new ByteArrayOutputStream();
+        ByteBuffer offsets = ByteBuffer.allocate((count + 1) * 4);
+        for (int ordinal = 0; ordinal < count; ordinal++) {
+            offsets.putInt(values.size());
+            byte[] value = field.apply(businesses.get(ordinal));
+            if (value == null) {
+                nulls[ordinal >>> 3] |= (byte) (1 << (ordinal & 7));
+            } else {
+                values.write(value);
+            }
+        }
+        offsets.putInt(values.size());
+        column.write(nulls);
+        column.write(offsets.array());
+        values.writeTo(column);
+    }
+}
@@ -0,0 +1,461 @@
+package main.java.loader;
+
+import main.java.model.Review;
+import main.java.model.TextArena;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+// Read-only copy of the review store laid out by business: all the reviews of a business sit next to each other
+// in the data file, so fetching them is one positioned read of one contiguous range instead of a read per review.
+// index.dat names the data file and maps every business ID to its range (offset, bytes, review count). Inside a
+// range every review is [payload length (int)][payload] with the payload in RecordCodec's format.
+// Every build writes a new data file (reviews-<generation>.dat) next to the old one and then replaces index.dat,
+// so the index always names a data file that was completely written, and a crash in between leaves the old pair.
+// It's built from the review store with an external bucket pass, so the reviews never all sit in memory at once:
+// first every review is spilled to one of BUCKET_COUNT files picked by hashing its business ID, then the buckets
+// are read back one at a time, grouped by business and written out group after group.
+// Blocks can be stored Deflate-compressed, each block on its own so a business still decompresses in one go. The
+// compressor is primed with a dictionary of common review words, trained on a sample of the reviews and saved in
+// the index, which matters because most blocks are only a few KB and would otherwise start with an empty window.
+public class ClusteredReviewStore implements Closeable {
+    private static final int INDEX_MAGIC = 0x43525649; // "CRVI"
+    private static final int INDEX_VERSION = 3;
+    // Data file of versions 1 and 2, which didn't name it in the index
+    private static final String LEGACY_DATA_FILE = "reviews.dat";
+    private static final String DATA_FILE_PREFIX = "reviews-";
+    private static final String DATA_FILE_SUFFIX = ".dat";
+    private static final String INDEX_FILE = "index.dat";
+    // Each bucket holds about 1/64th of the reviews, which is all that's in memory while grouping
+    private static final int BUCKET_COUNT = 64;
+    // Deflate only looks back 32KB, so a bigger dictionary would be wasted
+    private static final int DICTIONARY_BYTES = 32 * 1024;
+    private static final int DICTIONARY_SAMPLE_REVIEWS = 2000;
+
+    private final FileChannel channel;
+    private final Map<String, Range> ranges;
+    private final int reviewCount;
+    // Preset dictionary of the compressed blocks, null if the blocks are stored as they are
+    private final byte[] dictionary;
+    private final ThreadLocal<Inflater> inflaters = ThreadLocal.withInitial(Inflater::new);
+    private final AtomicLong inflatedBytes = new AtomicLong();
+    private final AtomicLong inflateNanos = new AtomicLong();
+
+    // Where the reviews of one business are
+    private static final class Range {
+        final long offset;
+        final int bytes;
+        // Size of the block once decompressed, the same as bytes for a block that isn't compressed
+        final int rawBytes;
+        final int count;
+
+        Range(long offset, int bytes, int rawBytes, int count) {
+            this.offset = offset;
+            this.bytes = bytes;
+            this.rawBytes = rawBytes;
+            this.count = count;
+        }
+    }
+
+    // Receives the reviews of one business
+    public interface BusinessReviewsConsumer {
+        void accept(String businessId, List<Review> reviews) throws IOException;
+    }
+
+    private ClusteredReviewStore(FileChannel channel, Map<String, Range> ranges, int reviewCount, byte[] dictionary) {
+        this.channel = channel;
+        this.ranges = ranges;
+        this.reviewCount = reviewCount;
+        this.dictionary = dictionary;
+    }
+
+    // Returns true if a clustered store has been built in the directory
+    public static boolean exists(String directoryPath) {
+        File indexFile = new File(directoryPath, INDEX_FILE);
+        if (!indexFile.exists()) {
+            return false;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            int version = in.readInt() == INDEX_MAGIC ? in.readInt() : -1;
+            String dataFile = version >= 3 ? in.readUTF() : LEGACY_DATA_FILE;
+            return new File(directoryPath, dataFile).exists();
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // Opens the clustered store in the directory, only the index is read into memory
+    public static ClusteredReviewStore open(String directoryPath) throws IOException {
+        File directory = new File(directoryPath);
+        Map<String, Range> ranges;
+        int reviewCount;
+        byte[] dictionary = null;
+        String dataFile;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(new File(directory, INDEX_FILE))))) {
+            int version = in.readInt() == INDEX_MAGIC ? in.readInt() : -1;
+            // Version 1 had no compression, versions 1 and 2 always used the same data file
+            if (version < 1 || version > INDEX_VERSION) {
+                throw new IOException("Not a clustered review index: " + directoryPath);
+            }
+            dataFile = version >= 3 ? in.readUTF() : LEGACY_DATA_FILE;
+            reviewCount = in.readInt();
+            int businessCount = in.readInt();
+            if (version >= 2) {
+                int dictionaryLength = in.readInt();
+                if (dictionaryLength >= 0) {
+                    dictionary = new byte[dictionaryLength];
+                    in.readFully(dictionary);
+                }
+            }
+            ranges = new HashMap<>(businessCount * 2);
+            for (int i = 0; i < businessCount; i++) {
+                String businessId = in.readUTF();
+                long offset = in.readLong();
+                int bytes = in.readInt();
+                int rawBytes = version >= 2 ? in.readInt() : bytes;
+                ranges.put(businessId, new Range(offset, bytes, rawBytes, in.readInt()));
+            }
+        }
+        FileChannel channel = FileChannel.open(new File(directory, dataFile).toPath(), StandardOpenOption.READ);
+        System.out.println("Opened clustered reviews: " + reviewCount + " reviews of " + ranges.size() + " businesses"
+                + (dictionary != null ? ", compressed." : "."));
+        return new ClusteredReviewStore(channel, ranges, reviewCount, dictionary);
+    }
+
+    // Returns the reviews for a business, or an empty list if it has none. Safe to call from several threads.
+    public List<Review> getReviews(String businessId) {
+        Range range = ranges.get(businessId);
+        if (range == null) {
+            return Collections.emptyList();
+        }
+        try {
+            // The block goes off heap and the reviews' text stays in it, so a cached business costs little heap
+            return decodeGroup(readRange(range, true), range.count);
+        } catch (IOException e) {
+            throw new UncheckedIOException("Failed to read the reviews of business " + businessId, e);
+        }
+    }
+
+    // Reads the reviews business by business, front to back through the file
+    public void forEachBusiness(BusinessReviewsConsumer consumer) throws IOException {
+        List<Map.Entry<String, Range>> byOffset = new ArrayList<>(ranges.entrySet());
+        byOffset.sort(Comparator.comparingLong(entry -> entry.getValue().offset));
+        for (Map.Entry<String, Range> entry : byOffset) {
+            Range range = entry.getValue();
+            // These blocks are usually dropped right after, so they stay on the heap where the young GC frees them
+            consumer.accept(entry.getKey(), decodeGroup(readRange(range, false), range.count));
+        }
+    }
+
+    // Returns the number of reviews of a business from the index, without reading them
+    public int getReviewCount(String businessId) {
+        Range range = ranges.get(businessId);
+        return range == null ? 0 : range.count;
+    }
+
+    // Returns the size of the block getReviews reads a business's reviews into, or 0 if it has none. The reviews'
+    // text points into that block, so it stays allocated for as long as any of them is kept.
+    public int getBlockBytes(String businessId) {
+        Range range = ranges.get(businessId);
+        return range == null ? 0 : range.rawBytes;
+    }
+
+    // Returns the number of businesses that have at least one review
+    public int getBusinessCount() {
+        return ranges.size();
+    }
+
+    // Returns the total number of stored reviews
+    public int getReviewCount() {
+        return reviewCount;
+    }
+
+    public boolean isEmpty() {
+        return reviewCount == 0;
+    }
+
+    public boolean isCompressed() {
+        return dictionary != null;
+    }
+
+    // Decompression speed so far, in MB of decompressed blocks per second
+    public double getDecodeMegabytesPerSecond() {
+        long nanos = inflateNanos.get();
+        return nanos == 0 ? 0 : inflatedBytes.get() / 1e6 / (nanos / 1e9);
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    // One positioned read of a whole group, decompressed if the store is compressed
+    private ByteBuffer readRange(Range range, boolean direct) throws IOException {
+        ByteBuffer buffer = direct && dictionary == null ? ByteBuffer.allocateDirect(range.bytes) : ByteBuffer.allocate(range.bytes);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, range.offset + buffer.position()) < 0) {
+                throw new EOFException("Review group runs past the end of the data file");
+            }
+        }
+        buffer.flip();
+        if (dictionary == null) {
+            return buffer;
+        }
+        long startTime = System.nanoTime();
+        ByteBuffer raw = direct ? ByteBuffer.allocateDirect(range.rawBytes) : ByteBuffer.allocate(range.rawBytes);
+        inflate(inflaters.get(), dictionary, buffer, raw);
+        inflateNanos.addAndGet(System.nanoTime() - startTime);
+        inflatedBytes.addAndGet(range.rawBytes);
+        return raw;
+    }
+
+    // Decompresses a whole block into raw, which has to be exactly the block's decompressed size
+    private static void inflate(Inflater inflater, byte[] dictionary, ByteBuffer compressed, ByteBuffer raw) throws IOException {
+        inflater.reset();
+        inflater.setInput(compressed);
+        try {
+            while (raw.hasRemaining()) {
+                if (inflater.inflate(raw) == 0) {
+                    if (inflater.needsDictionary()) {
+                        inflater.setDictionary(dictionary);
+                    } else if (inflater.finished() || inflater.needsInput()) {
+                        throw new EOFException("Compressed review group ends early");
+                    }
+                }
+            }
+        } catch (DataFormatException e) {
+            throw new IOException("Corrupt compressed review group", e);
+        }
+        raw.flip();
+    }
+
+    // Decodes the reviews of a block, their text points into the block instead of being copied out
+    private static List<Review> decodeGroup(ByteBuffer group, int count) throws IOException {
+        TextArena arena = TextArena.wrap(group);
+        List<Review> reviews = new ArrayList<>(count);
+        int offset = 0;
+        for (int i = 0; i < count; i++) {
+            int length = group.getInt(offset);
+            reviews.add(RecordCodec.decodeReview(arena, offset + 4, length));
+            offset += 4 + length;
+        }
+        return reviews;
+    }
+
+    // Builds the clustered store in the directory from every review in the review store, replacing an earlier one.
+    // With compress set every block is Deflate-compressed with a dictionary trained on a sample of the reviews.
+    public static void build(RecordStore reviewStore, String directoryPath, boolean compress) throws IOException {
+        long startTime = System.nanoTime();
+        File directory = new File(directoryPath);
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Failed to create clustered review directory at " + directory.getAbsolutePath());
+        }
+
+        // Pass 1: spill every review to the bucket of its business
+        File[] bucketFiles = new File[BUCKET_COUNT];
+        DataOutputStream[] buckets = new DataOutputStream[BUCKET_COUNT];
+        int[] bucketCounts = new int[BUCKET_COUNT];
+        List<String> sampleTexts = new ArrayList<>();
+        int sampleEvery = Math.max(1, reviewStore.size() / DICTIONARY_SAMPLE_REVIEWS);
+        int[] reviewsSeen = new int[1];
+        try {
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                bucketFiles[i] = new File(directory, String.format("bucket-%02d.tmp", i));
+                buckets[i] = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(bucketFiles[i]), 1 << 16));
+            }
+            reviewStore.forEach((id, payload) -> {
+                Review review = RecordCodec.decodeReview(payload);
+                String businessId = review.getBusiness_id();
+                if (compress && reviewsSeen[0]++ % sampleEvery == 0 && review.getText() != null) {
+                    sampleTexts.add(review.getText());
+                }
+                int bucketIndex = Math.floorMod(businessId.hashCode(), BUCKET_COUNT);
+                bucketCounts[bucketIndex]++;
+                DataOutputStream bucket = buckets[bucketIndex];
+                bucket.writeUTF(businessId);
+                bucket.writeInt(payload.length);
+                bucket.write(payload);
+            });
+        } catch (ClassNotFoundException e) {
+            // The codec never loads classes
+            throw new IllegalStateException(e);
+        } finally {
+            for (DataOutputStream bucket : buckets) {
+                if (bucket != null) {
+                    bucket.close();
+                }
+            }
+        }
+
+        // Pass 2: group each bucket by business and write the groups one after another
+        byte[] dictionary = compress ? trainDictionary(sampleTexts) : null;
+        if (dictionary != null && dictionary.length == 0) {
+            // Nothing to train on, e.g. no reviews at all
+            dictionary = null;
+        }
+        Deflater deflater = new Deflater(Deflater.DEFAULT_COMPRESSION);
+        byte[] deflateBuffer = new byte[1 << 16];
+        long rawTotal = 0;
+        long storedTotal = 0;
+        long deflateTime = 0;
+        // A new data file every build, the one the current index names is left alone until the index is replaced
+        long generation = System.currentTimeMillis();
+        while (new File(directory, dataFileName(generation)).exists()) {
+            generation++;
+        }
+        String dataFileName = dataFileName(generation);
+        File dataFile = new File(directory, dataFileName);
+        File tempDataFile = new File(directory, dataFileName + ".tmp");
+        Map<String, Range> ranges = new LinkedHashMap<>();
+        int reviewCount = 0;
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempDataFile), 1 << 16))) {
+            long offset = 0;
+            for (int bucketIndex = 0; bucketIndex < BUCKET_COUNT; bucketIndex++) {
+                File bucketFile = bucketFiles[bucketIndex];
+                Map<String, ByteArrayOutputStream> groups = new LinkedHashMap<>();
+                Map<String, Integer> groupCounts = new HashMap<>();
+                try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(bucketFile), 1 << 16))) {
+                    for (int i = 0; i < bucketCounts[bucketIndex]; i++) {
+                        String businessId = in.readUTF();
+                        byte[] payload = new byte[in.readInt()];
+                        in.readFully(payload);
+                        DataOutputStream group = new DataOutputStream(groups.computeIfAbsent(businessId, k -> new ByteArrayOutputStream()));
+                        group.writeInt(payload.length);
+                        group.write(payload);
+                        groupCounts.merge(businessId, 1, Integer::sum);
+                    }
+                }
+                for (Map.Entry<String, ByteArrayOutputStream> group : groups.entrySet()) {
+                    int count = groupCounts.get(group.getKey());
+                    byte[] raw = group.getValue().toByteArray();
+                    byte[] stored = raw;
+                    if (dictionary != null) {
+                        long deflateStart = System.nanoTime();
+                        stored = deflate(deflater, dictionary, raw, deflateBuffer);
+                        deflateTime += System.nanoTime() - deflateStart;
+                    }
+                    out.write(stored);
+                    ranges.put(group.getKey(), new Range(offset, stored.length, raw.length, count));
+                    offset += stored.length;
+                    rawTotal += raw.length;
+                    storedTotal += stored.length;
+                    reviewCount += count;
+                }
+                bucketFile.delete();
+            }
+        }
+
+        File indexFile = new File(directory, INDEX_FILE);
+        File tempIndexFile = new File(directory, INDEX_FILE + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempIndexFile)))) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(INDEX_VERSION);
+            out.writeUTF(dataFileName);
+            out.writeInt(reviewCount);
+            out.writeInt(ranges.size());
+            out.writeInt(dictionary == null ? -1 : dictionary.length);
+            if (dictionary != null) {
+                out.write(dictionary);
+            }
+            for (Map.Entry<String, Range> entry : ranges.entrySet()) {
+                out.writeUTF(entry.getKey());
+                out.writeLong(entry.getValue().offset);
+                out.writeInt(entry.getValue().bytes);
+                out.writeInt(entry.getValue().rawBytes);
+                out.writeInt(entry.getValue().count);
+            }
+        }
+        deflater.end();
+        // The data file gets its final name before the index names it, and swapping the index is the one step
+        // that switches readers over to the new build
+        replace(tempDataFile, dataFile);
+        replace(tempIndexFile, indexFile);
+        deleteOldDataFiles(directory, dataFileName);
+        System.out.println("Clustered " + reviewCount + " reviews of " + ranges.size() + " businesses in "
+                + (System.nanoTime() - startTime) / 1_000_000 + " ms.");
+        if (dictionary != null) {
+            System.out.printf("Compressed review blocks: %.1f MB -> %.1f MB (ratio %.2f), compress %.0f MB/s.%n",
+                    rawTotal / 1e6, storedTotal / 1e6, storedTotal == 0 ? 0 : (double) rawTotal / storedTotal,
+                    deflateTime == 0 ? 0 : rawTotal / 1e6 / (deflateTime / 1e9));
+        }
+    }
+
+    private static String dataFileName(long generation) {
+        return DATA_FILE_PREFIX + generation + DATA_FILE_SUFFIX;
+    }
+
+    // Removes the data files of earlier builds and of builds that never finished. One that's still open
+    // (e.g. on Windows) stays until the next build.
+    private static void deleteOldDataFiles(File directory, String currentDataFile) {
+        File[] files = directory.listFiles((dir, name) -> !name.equals(currentDataFile) && (name.equals(LEGACY_DATA_FILE)
+                || (name.startsWith(DATA_FILE_PREFIX) && (name.endsWith(DATA_FILE_SUFFIX) || name.endsWith(DATA_FILE_SUFFIX + ".tmp")))));
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+    }
+
+    // Compresses one block with the preset dictionary
+    private static byte[] deflate(Deflater deflater, byte[] dictionary, byte[] raw, byte[] buffer) {
+        deflater.reset();
+        deflater.setDictionary(dictionary);
+        deflater.setInput(raw);
+        deflater.finish();
+        ByteArrayOutputStream stored = new ByteArrayOutputStream(raw.length / 2 + 64);
+        while (!deflater.finished()) {
+            stored.write(buffer, 0, deflater.deflate(buffer));
+        }
+        return stored.toByteArray();
+    }
+
+    // Builds the preset dictionary from the most common words of the sample. Deflate matches nearer bytes with
+    // shorter codes, so the words go in from least to most common, ending with the most common ones.
+    static byte[] trainDictionary(List<String> sampleTexts) {
+        Map<String, Integer> counts = new HashMap<>();
+        for (String text : sampleTexts) {
+            for (String word : text.split("\\s+")) {
+                if (word.length() >= 3) {
+                    counts.merge(word, 1, Integer::sum);
+                }
+            }
+        }
+        List<Map.Entry<String, Integer>> common = new ArrayList<>(counts.entrySet());
+        // Weighted by length, a long word that's a bit rarer saves more than a short one
+        common.sort((a, b) -> Long.compare((long) b.getValue() * b.getKey().length(), (long) a.getValue() * a.getKey().length()));
+        List<byte[]> words = new ArrayList<>();
+        int size = 0;
+        for (Map.Entry<String, Integer> entry : common) {
+            if (entry.getValue() < 2) {
+                break;
+            }
+            byte[] word = (entry.getKey() + " ").getBytes(java.nio.charset.StandardCharsets.UTF_8);
+            if (size + word.length > DICTIONARY_BYTES) {
+                break;
+            }
+            words.add(word);
+            size += word.length;
+        }
+        ByteArrayOutputStream dictionary = new ByteArrayOutputStream(size);
+        for (int i = words.size() - 1; i >= 0; i--) {
+            dictionary.write(words.get(i), 0, words.get(i).length);
+        }
+        return dictionary.toByteArray();
+    }
+
+    private static void replace(File tempFile, File file) throws IOException {
+        if (!tempFile.renameTo(file)) {
+            file.delete();
+            if (!tempFile.renameTo(file)) {
+                throw new IOException("Failed to write " + file.getAbsolutePath());
+            }
+        }
+    }
+}
@@ -1,24 +1,48 @@
 package main.java.loader;
 
 import main.java.Main;
+import main.java.geo.BusinessLinker;
 import main.java.model.Business;
 import main.java.model.Review;
-import main.java.parser.JsonParseException;
 import main.java.parser.JsonParser;
+import main.java.parser.RecordDecoder;
+import main.java.service.TfIdfVectorStore;
 
 import javax.swing.*;
 import java.io.*;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
+import java.nio.file.Path;
 import java.nio.file.Paths;
 import java.nio.file.StandardOpenOption;
 import java.util.*;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
 
 public class DataLoader {
     // Paths for data storage.
     public static final String BUSINESS_DATA_PATH = "business_data/";
-    public static final String BUSINESS_MAP_PATH = "business_map/business_mapping.ser";
+    public static final String BUSINESS_SNAPSHOT_PATH = "business_data/businesses.snapshot";
+    public static final String BUSINESS_MAP_PATH = "business_map/business_mapping.dat";
+    // Radix tree of business names for completions while typing
+    public static final String NAME_INDEX_PATH = "business_map/name_prefix_index.dat";
     public static final String REVIEW_DATA_PATH = "review_data/";
+    public static final String VECTOR_DATA_PATH = "vector_data/tfidf_vectors.ser";
+    public static final String SIMILARITY_TABLE_PATH = "vector_data/similarity_table.dat";
+    // The stored reviews again, grouped by business
+    public static final String CLUSTERED_REVIEW_PATH = "review_data/by_business";
+    // Deflate the review blocks of the clustered store, run with -DcompressReviews=false to store them as they are
+    private static final boolean COMPRESS_REVIEWS = Boolean.parseBoolean(System.getProperty("compressReviews", "true"));
+    public static final String TERM_COUNTS_PATH = "vector_data/term_counts.dat";
+    // What the last ingest read from each dataset file
+    public static final String BUSINESS_MANIFEST_PATH = "business_data/ingest_manifest.dat";
+    public static final String REVIEW_MANIFEST_PATH = "review_data/ingest_manifest.dat";
+    // Dataset files on the classpath
+    private static final String BUSINESS_RESOURCE = "yelp_dataset/yelp_academic_dataset_business.json";
+    private static final String REVIEW_RESOURCE = "yelp_dataset/yelp_academic_dataset_review.json";
 
     // Perform clustering of businesses based on the first category listed
     private static void performClustering(List<Business> businesses) throws IOException {
@@ -59,71 +83,179 @@ public class DataLoader {
     }
 
     // Load business data from JSON, serialize the businesses, create and serialize a business map, and perform clustering.
+    // When the JSON is a file on disk an ingest manifest is kept, so an unchanged file is skipped and a changed one
+    // only has its changed chunks parsed again.
     public static void loadBusinessData() {
+        Path businessFile = resolveDatasetFile(BUSINESS_RESOURCE);
+        if (businessFile == null) {
+            loadAllBusinessData();
+            return;
+        }
+        List<Business> businesses = new ArrayList<>();
+        try {
+            IngestManifest previous = IngestManifest.readFromFile(BUSINESS_MANIFEST_PATH);
+            if (previous != null && previous.isUnchanged(businessFile) && BusinessSnapshot.hasCurrentFormat(BUSINESS_SNAPSHOT_PATH)
+                    && PersistentHashTable.hasCurrentFormat(BUSINESS_MAP_PATH) && NamePrefixIndex.hasCurrentFormat(NAME_INDEX_PATH)) {
+                System.out.println("Business data is unchanged since the last ingest, skipping it.");
+                return;
+            }
+            IngestManifest manifest;
+            try (RecordStore businessStore = previous == null ? RecordStore.create(BUSINESS_DATA_PATH) : RecordStore.open(BUSINESS_DATA_PATH)) {
+                // New and changed businesses replace their stored copies, the store itself is thread-safe
+                IngestManifest.Update<RecordStore> update = IngestManifest.update(businessFile, previous,
+                        RecordDecoder.businesses(RecordDecoder.ALL_BUSINESS_FIELDS), Business::getBusiness_id,
+                        () -> businessStore, (store, business) -> serializeBusiness(business, store));
+                if (update.hasRemovals()) {
+                    for (String businessId : businessStore.ids()) {
+                        if (update.isRemoved(businessId)) {
+                            businessStore.delete(businessId);
+                        }
+                    }
+                }
+                manifest = update.getManifest();
+                businesses = readBusinesses(businessStore);
+            }
+            // The snapshot, name map and clusters cover the whole catalog, they're rebuilt from the store
+            writeDerivedBusinessData(businesses);
+            manifest.writeToFile(BUSINESS_MANIFEST_PATH);
+            // Reviews were matched against the old set of businesses, so they all have to be ingested again
+            IngestManifest.invalidate(REVIEW_MANIFEST_PATH);
+        } catch (IOException | UncheckedIOException | com.google.gson.JsonParseException e) {
+            JOptionPane.showMessageDialog(null, "Error loading business data: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        }
+        // Report the number of businesses loaded
+        System.out.println("Loaded " + businesses.size() + " businesses.");
+    }
+
+    // Full ingest for when the JSON can't be read as a file, e.g. when it is packed in a jar
+    private static void loadAllBusinessData() {
         JsonParser jsonParser = new JsonParser();
-        List<Business> businesses = null;
+        List<Business> businesses = new ArrayList<>();
 
-        try (InputStream businessStream = Main.class.getClassLoader().getResourceAsStream("yelp_dataset/yelp_academic_dataset_business.json")) {
+        try (InputStream businessStream = Main.class.getClassLoader().getResourceAsStream(BUSINESS_RESOURCE)) {
             if (businessStream == null) throw new FileNotFoundException("Business data file not found.");
-            // Parse businesses from the JSON file
-            businesses = jsonParser.parseBusinesses(new InputStreamReader(businessStream));
-            // Serialize businesses to files
-            serializeBusinesses(businesses);
-            // Create a persistent hash table that mapping business names to IDs and serialize it
-            createAndSerializeBusinessMap(businesses);
-            // Cluster businesses and serialize clusters
-            performClustering(businesses);
-        } catch (IOException | JsonParseException e) {
+            // Parse businesses from the JSON file and append each one to a fresh business store as soon as it is parsed
+            try (RecordStore businessStore = RecordStore.create(BUSINESS_DATA_PATH);
+                 Stream<Business> businessRecords = jsonParser.streamBusinesses(new InputStreamReader(businessStream, StandardCharsets.UTF_8))) {
+                Iterator<Business> iterator = businessRecords.iterator();
+                while (iterator.hasNext()) {
+                    Business business = iterator.next();
+                    serializeBusiness(business, businessStore);
+                    businesses.add(business);
+                }
+            }
+            writeDerivedBusinessData(businesses);
+        } catch (IOException | UncheckedIOException | com.google.gson.JsonParseException e) {
             JOptionPane.showMessageDialog(null, "Error loading business data: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
         }
         // Report the number of businesses loaded
         System.out.println("Loaded " + businesses.size() + " businesses.");
     }
 
-    // Serialize a list of businesses to individual files
-    public static void serializeBusinesses(List<Business> businesses) throws IOException {
-        File businessDataDir = new File(BUSINESS_DATA_PATH);
-        if (!businessDataDir.exists() && !businessDataDir.mkdirs()) {
-            System.err.println("Failed to create business data directory at " + businessDataDir.getAbsolutePath());
-            return;
+    // Writes everything that is computed from the whole business list
+    private static void writeDerivedBusinessData(List<Business> businesses) throws IOException {
+        // Link the businesses with their geographical neighbours once here, the snapshot keeps the links
+        new BusinessLinker().linkBusinesses(businesses);
+        // Write the columnar snapshot that later launches start from
+        BusinessSnapshot.write(businesses, BUSINESS_SNAPSHOT_PATH);
+        // Create a persistent hash table that mapping business names to IDs and serialize it
+        createAndSerializeBusinessMap(businesses);
+        // Cluster businesses and serialize clusters
+        performClustering(businesses);
+    }
+
+    // Maps the business snapshot, returns null if no snapshot has been written yet
+    public static BusinessSnapshot openBusinessSnapshot() {
+        if (!new File(BUSINESS_SNAPSHOT_PATH).exists()) {
+            return null;
         }
-        for (Business business : businesses) {
-            File businessFile = new File(businessDataDir, business.getBusiness_id() + ".ser");
-            try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(businessFile))) {
-                oos.writeObject(business);
-                System.out.println("Serialized business with neighbors: " + business.getName());
-            } catch (IOException e) {
-                System.err.println("Error serializing business " + business.getName() + ": " + e.getMessage());
+        try {
+            return BusinessSnapshot.open(BUSINESS_SNAPSHOT_PATH);
+        } catch (IOException e) {
+            System.err.println("Could not open business snapshot, falling back to the business store: " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Serialize a list of businesses into the business store, replacing the stored copies
+    public static void serializeBusinesses(List<Business> businesses) throws IOException {
+        try (RecordStore businessStore = RecordStore.open(BUSINESS_DATA_PATH)) {
+            for (Business business : businesses) {
+                serializeBusiness(business, businessStore);
             }
         }
     }
 
+    // Serialize an individual business as one record of the store
+    private static void serializeBusiness(Business business, RecordStore businessStore) {
+        try {
+            businessStore.append(business.getBusiness_id(), RecordCodec.encodeBusiness(business));
+            System.out.println("Serialized business with neighbors: " + business.getName());
+        } catch (IOException e) {
+            System.err.println("Error serializing business " + business.getName() + ": " + e.getMessage());
+        }
+    }
 
-    // Deserialize businesses from files to a list
+    // Deserialize every business in the store to a list, reading the segments front to back
     public static List<Business> loadSerializedBusinessData() throws IOException, ClassNotFoundException {
-        File businessDataDir = new File(BUSINESS_DATA_PATH);
         List<Business> businesses = new ArrayList<>();
-        // Check if the directory exists
-        if (businessDataDir.exists() && businessDataDir.isDirectory()) {
-            // List all serialized files in the directory
-            File[] files = businessDataDir.listFiles((dir, name) -> name.endsWith(".ser"));
-            // Deserialize each file to a Business object and add to the list
-            for (File file : files) {
-                try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(file))) {
-                    Business business = (Business) ois.readObject();
+        if (!new File(BUSINESS_DATA_PATH).isDirectory()) {
+            System.out.println("Business data directory does not exist or is not a directory.");
+            return businesses;
+        }
+        try (RecordStore businessStore = RecordStore.open(BUSINESS_DATA_PATH)) {
+            return readBusinesses(businessStore);
+        }
+    }
+
+    // Decodes every business of an open store
+    private static List<Business> readBusinesses(RecordStore businessStore) throws IOException {
+        List<Business> businesses = new ArrayList<>();
+        // Neighbours are stored as IDs, they are linked up once every business is loaded
+        RecordCodec.NeighborLinks neighborLinks = new RecordCodec.NeighborLinks();
+        Map<String, Business> businessesById = new HashMap<>();
+        try {
+            businessStore.forEach((id, bytes) -> {
+                try {
+                    Business business = RecordCodec.decodeBusiness(bytes, neighborLinks);
                     businesses.add(business);
+                    businessesById.put(business.getBusiness_id(), business);
                     System.out.println("Deserialized business: " + business.getName() + " with ID: " + business.getBusiness_id());
                 } catch (Exception e) {
-                    System.err.println("Error deserializing file " + file.getName() + ": " + e.getMessage());
+                    System.err.println("Error deserializing business " + id + ": " + e.getMessage());
                 }
-            }
-        } else {
-            System.out.println("Business data directory does not exist or is not a directory.");
+            });
+        } catch (ClassNotFoundException e) {
+            // The codec never loads classes
+            throw new IllegalStateException(e);
         }
+        neighborLinks.resolve(businessesById::get);
         return businesses;
     }
 
-    // Create and serialize a hash table that maps business names to business IDs
+    // Deserialize a single business with one positioned read, returns null if it isn't stored.
+    // Its neighbours are read as well, without their own neighbours.
+    public static Business loadSerializedBusiness(String businessId) throws IOException {
+        try (RecordStore businessStore = RecordStore.open(BUSINESS_DATA_PATH)) {
+            byte[] bytes = businessStore.read(businessId);
+            if (bytes == null) {
+                return null;
+            }
+            RecordCodec.NeighborLinks neighborLinks = new RecordCodec.NeighborLinks();
+            Business business = RecordCodec.decodeBusiness(bytes, neighborLinks);
+            neighborLinks.resolve(neighborId -> {
+                try {
+                    byte[] neighborBytes = businessStore.read(neighborId);
+                    return neighborBytes == null ? null : RecordCodec.decodeBusiness(neighborBytes, new RecordCodec.NeighborLinks());
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            });
+            return business;
+        }
+    }
+
+    // Create and serialize a hash table that maps each business name to the IDs of every business with that name
     private static void createAndSerializeBusinessMap(List<Business> businesses) throws IOException {
         File businessMapFile = new File(BUSINESS_MAP_PATH);
         File businessMapDir = businessMapFile.getParentFile();
@@ -133,69 +265,152 @@ public class DataLoader {
         }
 
         // Create the hash table and fill it with businesses
-        PersistentHashTable businessMap = new PersistentHashTable(1024);
+        PersistentHashTable.Builder businessMap = new PersistentHashTable.Builder();
         for (Business business : businesses) {
             // Use the business name in lowercase as the key
             businessMap.put(business.getName().toLowerCase(), business.getBusiness_id());
             System.out.println("Mapped business: " + business.getName().toLowerCase() + " to ID: " + business.getBusiness_id());
         }
 
-        // Serialize the hash table to a file
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(businessMapFile))) {
-            oos.writeObject(businessMap);
-        }
+        // Write the hash table file, it's mapped as it is at startup
+        businessMap.writeToFile(BUSINESS_MAP_PATH);
+        // Name completions for the search box, kept next to the name map
+        NamePrefixIndex.write(businesses, NAME_INDEX_PATH, NamePrefixIndex.DEFAULT_TOP_COUNT);
     }
 
-    // Serialize a list of reviews, checking against existing business IDs
-    public static void serializeReviews(List<Review> reviews, List<Business> businesses) throws IOException {
-        File reviewDataDir = new File(REVIEW_DATA_PATH);
-        // Create the directory if it doesn't exist
-        if (!reviewDataDir.exists() && !reviewDataDir.mkdirs()) {
-            throw new IOException("Failed to create review data directory at " + reviewDataDir.getAbsolutePath());
+    // Serialize reviews as they are parsed, checking against existing business IDs, and count their terms for the vector store
+    public static int serializeReviews(Stream<Review> reviews, List<Business> businesses, TfIdfVectorStore.Builder vectorBuilder) throws IOException {
+        // Collect business IDs for reference checking
+        Set<String> businessIds = businesses.stream().map(Business::getBusiness_id).collect(Collectors.toSet());
+
+        int serializedCount = 0;
+        try (RecordStore reviewStore = RecordStore.create(REVIEW_DATA_PATH)) {
+            Iterator<Review> iterator = reviews.iterator();
+            while (iterator.hasNext()) {
+                if (ingestReview(iterator.next(), businessIds, reviewStore, vectorBuilder)) {
+                    serializedCount++;
+                }
+            }
+            ClusteredReviewStore.build(reviewStore, CLUSTERED_REVIEW_PATH, COMPRESS_REVIEWS);
         }
+        return serializedCount;
+    }
 
-        // Keep track of reviews that failed to serialize on the first attempt
-        List<Review> failedReviews = new ArrayList<>();
-        // Collect business IDs for reference checking
+    // Brings the review store and the term counts up to date with the review file. Only the chunks that changed since
+    // previous are parsed, on every core: each worker appends its reviews straight to the store and counts their
+    // terms in its own vector builder, taking back the counts of the stored version first. The worker builders are
+    // merged into vectorBuilder at the end. Returns the manifest of the file as it is now.
+    private static IngestManifest updateReviews(Path reviewFile, IngestManifest previous, List<Business> businesses, TfIdfVectorStore.Builder vectorBuilder) throws IOException {
         Set<String> businessIds = businesses.stream().map(Business::getBusiness_id).collect(Collectors.toSet());
+        AtomicInteger serializedCount = new AtomicInteger();
 
-        // Attempt to serialize each review
-        for (Review review : reviews) {
-            // Skip serialization if the review's business ID is not known (Probably not the best way to go about this...)
-            if (!businessIds.contains(review.getBusiness_id())) {
-                failedReviews.add(review);
-                logSerializationError(review);
-                continue;
+        try (RecordStore reviewStore = previous == null ? RecordStore.create(REVIEW_DATA_PATH) : RecordStore.open(REVIEW_DATA_PATH)) {
+            IngestManifest.Update<TfIdfVectorStore.Builder> update = IngestManifest.update(reviewFile, previous,
+                    RecordDecoder.reviews(RecordDecoder.STORED_REVIEW_FIELDS), Review::getReview_id,
+                    () -> new TfIdfVectorStore.Builder(businesses),
+                    (workerBuilder, review) -> {
+                        boolean wasStored = uncountStoredReview(review.getReview_id(), reviewStore, workerBuilder);
+                        if (ingestReview(review, businessIds, reviewStore, workerBuilder)) {
+                            serializedCount.incrementAndGet();
+                        } else if (wasStored) {
+                            deleteStoredReview(review.getReview_id(), reviewStore);
+                        }
+                    });
+            for (TfIdfVectorStore.Builder workerBuilder : update.getAccumulators()) {
+                vectorBuilder.merge(workerBuilder);
             }
-            try {
-                // Serialize the review
-                serializeReview(review, reviewDataDir);
-            } catch (IOException e) {
-                // Add to the list of failed reviews if an error occurs
-                failedReviews.add(review);
+            System.out.println("Serialized " + serializedCount + " new or changed reviews.");
+
+            // Reviews that are gone from the file
+            if (update.hasRemovals()) {
+                for (String reviewId : reviewStore.ids()) {
+                    if (update.isRemoved(reviewId)) {
+                        uncountStoredReview(reviewId, reviewStore, vectorBuilder);
+                        deleteStoredReview(reviewId, reviewStore);
+                    }
+                }
             }
+            // Lay the reviews out by business again for reading
+            if (update.getChangedChunks() > 0 || update.hasRemovals() || !ClusteredReviewStore.exists(CLUSTERED_REVIEW_PATH)) {
+                ClusteredReviewStore.build(reviewStore, CLUSTERED_REVIEW_PATH, COMPRESS_REVIEWS);
+            }
+            return update.getManifest();
         }
+    }
 
-        // Attempt to serialize failed reviews again......
-        if (!failedReviews.isEmpty()) {
-            System.out.println("Retrying serialization for failed reviews...");
-            for (Review review : failedReviews) {
-                try {
-                    serializeReview(review, reviewDataDir);
-                } catch (IOException e) {
-                    logSerializationError(review);
-                }
+    // Recounts the terms of every stored review from the clustered store, each business's reviews come in one read
+    private static TfIdfVectorStore.Builder countClusteredReviews(List<Business> businesses) throws IOException {
+        TfIdfVectorStore.Builder vectorBuilder = new TfIdfVectorStore.Builder(businesses);
+        try (ClusteredReviewStore clusteredReviews = ClusteredReviewStore.open(CLUSTERED_REVIEW_PATH)) {
+            clusteredReviews.forEachBusiness((businessId, reviews) -> reviews.forEach(vectorBuilder::addReview));
+        }
+        System.out.println("Recounted terms of " + vectorBuilder.getReviewCount() + " stored reviews.");
+        return vectorBuilder;
+    }
+
+    // Takes the counts of the stored version of a review back out of the builder, returns false if it wasn't stored
+    private static boolean uncountStoredReview(String reviewId, RecordStore reviewStore, TfIdfVectorStore.Builder vectorBuilder) {
+        try {
+            byte[] bytes = reviewStore.read(reviewId);
+            if (bytes == null) {
+                return false;
+            }
+            vectorBuilder.removeReview(RecordCodec.decodeReview(bytes));
+            return true;
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    private static void deleteStoredReview(String reviewId, RecordStore reviewStore) {
+        try {
+            reviewStore.delete(reviewId);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    // Serialize one review and count its terms, returns false if it was skipped
+    private static boolean ingestReview(Review review, Set<String> businessIds, RecordStore reviewStore, TfIdfVectorStore.Builder vectorBuilder) {
+        // Skip serialization if the review's business ID is not known
+        if (!businessIds.contains(review.getBusiness_id())) {
+            logSerializationError(review);
+            return false;
+        }
+        try {
+            // Serialize the review
+            serializeReview(review, reviewStore);
+        } catch (IOException e) {
+            // Attempt to serialize the failed review again......
+            try {
+                serializeReview(review, reviewStore);
+            } catch (IOException retryError) {
+                logSerializationError(review);
+                return false;
             }
         }
+        vectorBuilder.addReview(review);
+        return true;
+    }
+
+    // Returns the dataset resource as a file on disk, or null if it only exists inside a jar or not at all
+    private static Path resolveDatasetFile(String resource) {
+        URL url = Main.class.getClassLoader().getResource(resource);
+        if (url == null || !"file".equals(url.getProtocol())) {
+            return null;
+        }
+        try {
+            return Paths.get(url.toURI());
+        } catch (URISyntaxException e) {
+            return null;
+        }
     }
 
-    // Serialize an individual review to a file
-    private static void serializeReview(Review review, File reviewDataDir) throws IOException {
-        // File for storing the serialized review
-        File reviewFile = new File(reviewDataDir, review.getReview_id() + ".ser");
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(reviewFile))) {
-            // Write the review object to file
-            oos.writeObject(review);
+    // Serialize an individual review as one record of the store
+    private static void serializeReview(Review review, RecordStore reviewStore) throws IOException {
+        try {
+            // Append the review to the current segment
+            reviewStore.append(review.getReview_id(), RecordCodec.encodeReview(review));
             System.out.println("Serialized review: " + review.getReview_id() + " for business ID: " + review.getBusiness_id());
         } catch (IOException e) {
             // Log an error if serialization fails and rethrow the exception
@@ -217,38 +432,89 @@ public class DataLoader {
         }
     }
 
-    // Deserialize review data from files into a list of Review objects
+    // Deserialize every review in the store into a list of Review objects
     public static List<Review> loadSerializedReviewData() throws IOException, ClassNotFoundException {
-        File reviewDataDir = new File(REVIEW_DATA_PATH);
         List<Review> reviews = new ArrayList<>();
-        if (reviewDataDir.exists() && reviewDataDir.isDirectory()) {
-            File[] files = reviewDataDir.listFiles((dir, name) -> name.endsWith(".ser"));
-            for (File file : files) {
-                try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(file))) {
-                    Review review = (Review) ois.readObject();
-                    reviews.add(review);
-                    if (reviews.size() < 10) {
-                        System.out.println("Deserialized review: " + review.getReview_id() + " for business ID: " + review.getBusiness_id());
-                    }
-                }
-            }
-        } else {
+        if (!new File(REVIEW_DATA_PATH).isDirectory()) {
             System.err.println("Review data directory does not exist or is not a directory.");
+            return reviews;
+        }
+        try (RecordStore reviewStore = RecordStore.open(REVIEW_DATA_PATH)) {
+            reviewStore.forEach((id, bytes) -> {
+                Review review = RecordCodec.decodeReview(bytes);
+                reviews.add(review);
+                if (reviews.size() < 10) {
+                    System.out.println("Deserialized review: " + review.getReview_id() + " for business ID: " + review.getBusiness_id());
+                }
+            });
         }
         return reviews;
     }
 
-    // Begin the process of loading and serializing review data (Methods arent in order because im lazy)
+    // Begin the process of loading and serializing review data, then precompute the TF-IDF vectors (Methods arent in order because im lazy).
+    // Like the businesses, an unchanged review file is skipped and a changed one only has its changed chunks parsed,
+    // the term counts of the last run are loaded and updated so the vectors don't need every review again.
     public static void loadAndSerializeReviewData(List<Business> businesses) {
         System.out.println("Starting to load and serialize review data...");
+        try {
+            Path reviewFile = resolveDatasetFile(REVIEW_RESOURCE);
+            if (reviewFile == null) {
+                TfIdfVectorStore.Builder vectorBuilder = new TfIdfVectorStore.Builder(businesses);
+                int serializedCount = streamAndSerializeReviews(businesses, vectorBuilder);
+                System.out.println("Serialized " + serializedCount + " reviews.");
+                // Compute every business's TF-IDF vector once here so searches don't have to
+                vectorBuilder.build().serializeToFile(VECTOR_DATA_PATH);
+                return;
+            }
+
+            IngestManifest previous = IngestManifest.readFromFile(REVIEW_MANIFEST_PATH);
+            TfIdfVectorStore.Builder vectorBuilder = null;
+            if (previous != null && new File(VECTOR_DATA_PATH).exists() && new File(TERM_COUNTS_PATH).exists()) {
+                if (previous.isUnchanged(reviewFile)) {
+                    System.out.println("Review data is unchanged since the last ingest, skipping it.");
+                    if (!ClusteredReviewStore.exists(CLUSTERED_REVIEW_PATH)) {
+                        try (RecordStore reviewStore = RecordStore.open(REVIEW_DATA_PATH)) {
+                            ClusteredReviewStore.build(reviewStore, CLUSTERED_REVIEW_PATH, COMPRESS_REVIEWS);
+                        }
+                    }
+                    return;
+                }
+                try {
+                    vectorBuilder = TfIdfVectorStore.Builder.readCounts(TERM_COUNTS_PATH, businesses);
+                } catch (IOException | ClassNotFoundException e) {
+                    System.err.println("Could not load the term counts: " + e.getMessage());
+                }
+            }
+            if (vectorBuilder == null && previous != null && ClusteredReviewStore.exists(CLUSTERED_REVIEW_PATH)) {
+                // The stored reviews still match the previous manifest, count them again one business at a time
+                vectorBuilder = countClusteredReviews(businesses);
+            }
+            if (vectorBuilder == null) {
+                // Without the old counts there's nothing to update, so start over
+                previous = null;
+                vectorBuilder = new TfIdfVectorStore.Builder(businesses);
+            }
+
+            IngestManifest manifest = updateReviews(reviewFile, previous, businesses, vectorBuilder);
+            // Compute every business's TF-IDF vector once here so searches don't have to
+            vectorBuilder.build().serializeToFile(VECTOR_DATA_PATH);
+            vectorBuilder.writeCounts(TERM_COUNTS_PATH);
+            // Written last, so a run that fails halfway is redone in full next time
+            manifest.writeToFile(REVIEW_MANIFEST_PATH);
+        } catch (IOException | UncheckedIOException | com.google.gson.JsonParseException e) {
+            JOptionPane.showMessageDialog(null, "Error loading review data: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+        }
+    }
+
+    // Single-threaded fallback for when the review file can't be mapped, e.g. when it is packed in a jar
+    private static int streamAndSerializeReviews(List<Business> businesses, TfIdfVectorStore.Builder vectorBuilder) throws IOException {
         JsonParser jsonParser = new JsonParser();
-        try (InputStream reviewStream = Main.class.getClassLoader().getResourceAsStream("yelp_dataset/yelp_academic_dataset_review.json")) {
+        try (InputStream reviewStream = Main.class.getClassLoader().getResourceAsStream(REVIEW_RESOURCE)) {
             if (reviewStream == null) throw new FileNotFoundException("Review data file not found.");
-            List<Review> reviews = jsonParser.parseReviews(new InputStreamReader(reviewStream));
-            serializeReviews(reviews, businesses);
-            System.out.println("Serialized " + reviews.size() + " reviews.");
-        } catch (IOException | JsonParseException e) {
-            JOptionPane.showMessageDialog(null, "Error loading review data: " + e.getMessage(), "Error", JOptionPane.ERROR_MESSAGE);
+            // Reviews are handled one at a time as they are parsed, so the whole file never has to fit in memory
+            try (Stream<Review> reviews = jsonParser.streamReviews(new InputStreamReader(reviewStream, StandardCharsets.UTF_8), RecordDecoder.STORED_REVIEW_FIELDS)) {
+                return serializeReviews(reviews, businesses, vectorBuilder);
+            }
         }
     }
 
@@ -260,7 +526,7 @@ public class DataLoader {
             List<Review> reviews = loadSerializedReviewData();
 
             validateDataIntegrity(businesses, reviews);
-            testReviewMatching(businesses, reviews);
+            testReviewMatching(businesses, new ReviewIndex(reviews));
 
         } catch (IOException e) {
             JOptionPane.showMessageDialog(null, "IO Error occurred: " + e.getMessage(), "IO Error", JOptionPane.ERROR_MESSAGE);
@@ -288,12 +554,10 @@ public class DataLoader {
     }
 
     // Tests the matching of reviews to businesses and reports the number of reviews each business has
-    public static void testReviewMatching(List<Business> businesses, List<Review> reviews) {
+    public static void testReviewMatching(List<Business> businesses, ReviewIndex reviewIndex) {
         System.out.println("Testing review matching...");
         for (Business business : businesses) {
-            List<Review> matchedReviews = reviews.stream()
-                    .filter(r -> r.getBusiness_id().equals(business.getBusiness_id()))
-                    .collect(Collectors.toList());
+            List<Review> matchedReviews = reviewIndex.getReviews(business.getBusiness_id());
             System.out.println("Business: " + business.getName() + " (" + business.getBusiness_id() + ") - Reviews found: " + matchedReviews.size());
         }
     }
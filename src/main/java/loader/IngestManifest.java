@@ -0,0 +1,311 @@
+package main.java.loader;
+
+import main.java.parser.ParallelNdjsonReader;
+import main.java.parser.RecordDecoder;
+
+import java.io.*;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiConsumer;
+import java.util.function.Function;
+import java.util.function.Supplier;
+import java.util.zip.CRC32;
+
+// Remembers what an ingest run read from an NDJSON file, so the next run can skip what hasn't changed.
+// The file is cut into chunks at content-defined line boundaries (a chunk ends after a line whose CRC hits
+// a fixed bit pattern), so inserting or editing a record only changes the chunks around it instead of shifting
+// every chunk after it. Per chunk the manifest keeps its length, CRC32 and the 64-bit hashes of the record IDs
+// in it. A file with the same size and mtime is skipped outright, otherwise only chunks with an unknown CRC
+// are parsed again, and IDs that are no longer in any chunk are reported as removed.
+public class IngestManifest {
+    private static final int MAGIC = 0x494E474D; // "INGM"
+    private static final int VERSION = 1;
+    // A chunk ends after a line whose CRC has these low bits all zero, about every 1024 lines
+    private static final int CHUNK_LINE_MASK = 1023;
+    private static final int MAX_CHUNK_BYTES = 64 * 1024 * 1024;
+
+    private final long fileSize;
+    private final long lastModified;
+    private final List<Chunk> chunks;
+
+    // One content-defined piece of the file
+    private static final class Chunk {
+        final long checksum;
+        final long length;
+        long[] idHashes;
+
+        Chunk(long checksum, long length, long[] idHashes) {
+            this.checksum = checksum;
+            this.length = length;
+            this.idHashes = idHashes;
+        }
+
+        // Chunks are matched by content, not position
+        long key() {
+            return checksum * 31 + length;
+        }
+    }
+
+    // Outcome of an update: the new manifest, the accumulators of the parsing workers and the removed IDs
+    public static final class Update<A> {
+        private final IngestManifest manifest;
+        private final Collection<A> accumulators;
+        private final Set<Long> removedIdHashes;
+        private final int changedChunks;
+
+        Update(IngestManifest manifest, Collection<A> accumulators, Set<Long> removedIdHashes, int changedChunks) {
+            this.manifest = manifest;
+            this.accumulators = accumulators;
+            this.removedIdHashes = removedIdHashes;
+            this.changedChunks = changedChunks;
+        }
+
+        public IngestManifest getManifest() {
+            return manifest;
+        }
+
+        // One accumulator per worker thread that parsed changed chunks, in no particular order
+        public Collection<A> getAccumulators() {
+            return accumulators;
+        }
+
+        // Returns true if the record ID was in the previous version of the file but isn't in this one
+        public boolean isRemoved(String id) {
+            return removedIdHashes.contains(hashId(id));
+        }
+
+        public boolean hasRemovals() {
+            return !removedIdHashes.isEmpty();
+        }
+
+        public int getChangedChunks() {
+            return changedChunks;
+        }
+    }
+
+    private IngestManifest(long fileSize, long lastModified, List<Chunk> chunks) {
+        this.fileSize = fileSize;
+        this.lastModified = lastModified;
+        this.chunks = chunks;
+    }
+
+    // Returns true if the file still has the size and modification time it had when this manifest was made
+    public boolean isUnchanged(Path file) throws IOException {
+        return Files.size(file) == fileSize && Files.getLastModifiedTime(file).toMillis() == lastModified;
+    }
+
+    public int getChunkCount() {
+        return chunks.size();
+    }
+
+    // Scans the file, parses only the chunks that previous doesn't know (every chunk if previous is null) in parallel,
+    // and hands their records to consumer together with the accumulator of the worker thread parsing them
+    public static <T, A> Update<A> update(Path file, IngestManifest previous, RecordDecoder<T> decoder, Function<T, String> idOf,
+                                          Supplier<A> newAccumulator, BiConsumer<A, T> consumer) throws IOException {
+        long startTime = System.nanoTime();
+        long lastModified = Files.getLastModifiedTime(file).toMillis();
+        Map<Long, Chunk> knownChunks = new HashMap<>();
+        if (previous != null) {
+            for (Chunk chunk : previous.chunks) {
+                knownChunks.put(chunk.key(), chunk);
+            }
+        }
+
+        // Cut the file into chunks and find the ones whose contents are new
+        List<Chunk> chunks = new ArrayList<>();
+        List<Integer> changed = new ArrayList<>();
+        List<Long> changedStarts = new ArrayList<>();
+        long fileSize = cutChunks(file, (start, length, checksum) -> {
+            Chunk chunk = new Chunk(checksum, length, null);
+            Chunk known = knownChunks.get(chunk.key());
+            if (known != null) {
+                chunk.idHashes = known.idHashes;
+            } else {
+                changed.add(chunks.size());
+                changedStarts.add(start);
+            }
+            chunks.add(chunk);
+        });
+
+        // Parse the changed chunks, every chunk collects the hashes of its record IDs
+        long[] starts = new long[changed.size()];
+        long[] ends = new long[changed.size()];
+        for (int i = 0; i < starts.length; i++) {
+            starts[i] = changedStarts.get(i);
+            ends[i] = starts[i] + chunks.get(changed.get(i)).length;
+        }
+        Map<Thread, A> workerAccumulators = new ConcurrentHashMap<>();
+        List<IdHashes> chunkIds = new ParallelNdjsonReader(file).readRanges(starts, ends, decoder, IdHashes::new, (ids, record) -> {
+            String id = idOf.apply(record);
+            if (id == null) {
+                // Records are kept by ID, one without it can't be stored or tracked
+                System.err.println("Skipping a record without an ID in " + file.getFileName());
+                return;
+            }
+            ids.add(hashId(id));
+            consumer.accept(workerAccumulators.computeIfAbsent(Thread.currentThread(), thread -> newAccumulator.get()), record);
+        });
+        for (int i = 0; i < changed.size(); i++) {
+            chunks.get(changed.get(i)).idHashes = chunkIds.get(i).toArray();
+        }
+
+        // IDs that were in the old file but are in no chunk of the new one
+        Set<Long> removedIdHashes = new HashSet<>();
+        if (previous != null) {
+            Set<Long> currentIdHashes = new HashSet<>();
+            for (Chunk chunk : chunks) {
+                for (long idHash : chunk.idHashes) {
+                    currentIdHashes.add(idHash);
+                }
+            }
+            for (Chunk chunk : previous.chunks) {
+                for (long idHash : chunk.idHashes) {
+                    if (!currentIdHashes.contains(idHash)) {
+                        removedIdHashes.add(idHash);
+                    }
+                }
+            }
+        }
+
+        System.out.println("Ingest of " + file.getFileName() + ": " + changed.size() + " of " + chunks.size() + " chunks changed, "
+                + removedIdHashes.size() + " records removed, " + (System.nanoTime() - startTime) / 1_000_000 + " ms.");
+        return new Update<>(new IngestManifest(fileSize, lastModified, chunks), workerAccumulators.values(), removedIdHashes, changed.size());
+    }
+
+    private interface ChunkVisitor {
+        void visit(long start, long length, long checksum);
+    }
+
+    // Reads the file once, front to back, and reports every chunk with its CRC32. Returns the file size.
+    private static long cutChunks(Path file, ChunkVisitor visitor) throws IOException {
+        CRC32 chunkChecksum = new CRC32();
+        CRC32 lineChecksum = new CRC32();
+        byte[] buffer = new byte[1 << 16];
+        long position = 0;
+        long chunkStart = 0;
+        try (InputStream in = Files.newInputStream(file)) {
+            int read;
+            while ((read = in.read(buffer)) > 0) {
+                int lineFrom = 0;
+                for (int i = 0; i < read; i++) {
+                    if (buffer[i] != '\n') {
+                        continue;
+                    }
+                    chunkChecksum.update(buffer, lineFrom, i + 1 - lineFrom);
+                    lineChecksum.update(buffer, lineFrom, i + 1 - lineFrom);
+                    long lineEnd = position + i + 1;
+                    if ((lineChecksum.getValue() & CHUNK_LINE_MASK) == 0 || lineEnd - chunkStart >= MAX_CHUNK_BYTES) {
+                        visitor.visit(chunkStart, lineEnd - chunkStart, chunkChecksum.getValue());
+                        chunkChecksum.reset();
+                        chunkStart = lineEnd;
+                    }
+                    lineChecksum.reset();
+                    lineFrom = i + 1;
+                }
+                // The rest of the buffer belongs to a line that continues in the next read
+                chunkChecksum.update(buffer, lineFrom, read - lineFrom);
+                lineChecksum.update(buffer, lineFrom, read - lineFrom);
+                position += read;
+            }
+        }
+        if (position > chunkStart) {
+            visitor.visit(chunkStart, position - chunkStart, chunkChecksum.getValue());
+        }
+        return position;
+    }
+
+    // 64-bit FNV-1a hash of a record ID
+    static long hashId(String id) {
+        long hash = 0xcbf29ce484222325L;
+        for (int i = 0; i < id.length(); i++) {
+            hash ^= id.charAt(i);
+            hash *= 0x100000001b3L;
+        }
+        return hash;
+    }
+
+    // Growable list of ID hashes for one chunk
+    private static final class IdHashes {
+        private long[] hashes = new long[256];
+        private int size;
+
+        void add(long hash) {
+            if (size == hashes.length) {
+                hashes = Arrays.copyOf(hashes, size * 2);
+            }
+            hashes[size++] = hash;
+        }
+
+        long[] toArray() {
+            return Arrays.copyOf(hashes, size);
+        }
+    }
+
+    // Writes the manifest, replacing the old one in one step
+    public void writeToFile(String path) throws IOException {
+        File manifestFile = new File(path);
+        File manifestDir = manifestFile.getParentFile();
+        if (manifestDir != null && !manifestDir.exists() && !manifestDir.mkdirs()) {
+            throw new IOException("Failed to create manifest directory at " + manifestDir.getAbsolutePath());
+        }
+        File tempFile = new File(path + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(fileSize);
+            out.writeLong(lastModified);
+            out.writeInt(chunks.size());
+            for (Chunk chunk : chunks) {
+                out.writeLong(chunk.checksum);
+                out.writeLong(chunk.length);
+                out.writeInt(chunk.idHashes.length);
+                for (long idHash : chunk.idHashes) {
+                    out.writeLong(idHash);
+                }
+            }
+        }
+        if (!tempFile.renameTo(manifestFile)) {
+            manifestFile.delete();
+            if (!tempFile.renameTo(manifestFile)) {
+                throw new IOException("Failed to write manifest at " + manifestFile.getAbsolutePath());
+            }
+        }
+    }
+
+    // Reads a manifest, returns null if there is none or it can't be read, which means a full ingest
+    public static IngestManifest readFromFile(String path) {
+        File manifestFile = new File(path);
+        if (!manifestFile.exists()) {
+            return null;
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(manifestFile)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                return null;
+            }
+            long fileSize = in.readLong();
+            long lastModified = in.readLong();
+            int chunkCount = in.readInt();
+            List<Chunk> chunks = new ArrayList<>(chunkCount);
+            for (int i = 0; i < chunkCount; i++) {
+                long checksum = in.readLong();
+                long length = in.readLong();
+                long[] idHashes = new long[in.readInt()];
+                for (int j = 0; j < idHashes.length; j++) {
+                    idHashes[j] = in.readLong();
+                }
+                chunks.add(new Chunk(checksum, length, idHashes));
+            }
+            return new IngestManifest(fileSize, lastModified, chunks);
+        } catch (IOException e) {
+            System.err.println("Ignoring unreadable manifest " + path + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    // Deletes a manifest so the next run ingests the whole file again
+    public static void invalidate(String path) {
+        new File(path).delete();
+    }
+}
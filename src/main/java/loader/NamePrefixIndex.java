@@ -0,0 +1,291 @@
+package main.java.loader;
+
+import main.java.model.Business;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+// Autocomplete for business names: a radix tree over the lowercase UTF-8 bytes of every distinct name, where each
+// node also keeps the names below it with the most reviews (all locations of a name added up). A completion walks
+// down the typed prefix and reads the list off the node it ends in, so it costs one step per prefix byte no matter
+// how many names start with it. The tree is written once at ingest and memory mapped, nothing is rebuilt at startup.
+// Layout: header (magic, version, name count, top count, root offset, node count), the names, then the nodes.
+// A name is [review count (int)][length (int)][UTF-8 bytes], as first written (most reviewed location's spelling).
+// A node is [label length (short)][label bytes][top count (byte)][name offsets (int)][child count (short)]
+// [first byte of each child's label][child offsets (int)], children in unsigned byte order. Children are written
+// before their parent, so the root comes last.
+public class NamePrefixIndex {
+    private static final int MAGIC = 0x4E505831; // "NPX1"
+    private static final int VERSION = 1;
+    private static final int HEADER_BYTES = 32;
+    // Completions kept per node
+    public static final int DEFAULT_TOP_COUNT = 10;
+
+    private final MappedByteBuffer buffer;
+    private final int nameCount;
+    private final int topCount;
+    private final int rootOffset;
+
+    private NamePrefixIndex(MappedByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a name prefix index file");
+        }
+        this.nameCount = buffer.getInt(8);
+        this.topCount = buffer.getInt(12);
+        this.rootOffset = buffer.getInt(16);
+        if (rootOffset < HEADER_BYTES || rootOffset >= buffer.capacity()) {
+            throw new IOException("Corrupt name prefix index header");
+        }
+    }
+
+    // Maps an index file, nothing is deserialized
+    public static NamePrefixIndex open(String path) throws IOException {
+        try (FileChannel channel = FileChannel.open(new File(path).toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Name prefix index is too big to map: " + path);
+            }
+            // The mapping stays valid after the channel is closed
+            return new NamePrefixIndex(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    // Returns true if the file exists and is an index this version can read
+    public static boolean hasCurrentFormat(String path) {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(path))) {
+            return in.readInt() == MAGIC && in.readInt() == VERSION;
+        } catch (IOException e) {
+            return false;
+        }
+    }
+
+    // Names are matched the same way the name hash table matches them, leading spaces of what's typed are ignored
+    private static String normalize(String name) {
+        return name.toLowerCase();
+    }
+
+    // Returns up to limit names starting with the prefix, most reviewed first. An empty prefix gives the most
+    // reviewed names overall. At most the top count the index was built with is returned.
+    public List<String> complete(String prefix, int limit) {
+        byte[] query = normalize(prefix.stripLeading()).getBytes(StandardCharsets.UTF_8);
+        int node = rootOffset;
+        int matched = 0;
+        List<String> completions = new ArrayList<>();
+        while (node >= 0) {
+            int labelLength = buffer.getShort(node) & 0xFFFF;
+            int position = node + 2;
+            // Match the node's label against the rest of the prefix, the prefix may end inside the label
+            for (int i = 0; i < labelLength && matched < query.length; i++, matched++) {
+                if (buffer.get(position + i) != query[matched]) {
+                    node = -1;
+                    break;
+                }
+            }
+            if (node < 0) {
+                break;
+            }
+            position += labelLength;
+            if (matched == query.length) {
+                int count = Math.min(limit, buffer.get(position) & 0xFF);
+                for (int i = 0; i < count; i++) {
+                    completions.add(readName(buffer.getInt(position + 1 + i * 4)));
+                }
+                break;
+            }
+            node = findChild(position + 1 + (buffer.get(position) & 0xFF) * 4, query[matched]);
+        }
+        return completions;
+    }
+
+    // Binary search of the child whose label starts with the byte, returns its offset or -1
+    private int findChild(int position, byte first) {
+        int childCount = buffer.getShort(position) & 0xFFFF;
+        int firstBytes = position + 2;
+        int offsets = firstBytes + childCount;
+        int low = 0;
+        int high = childCount - 1;
+        int wanted = first & 0xFF;
+        while (low <= high) {
+            int middle = (low + high) >>> 1;
+            int value = buffer.get(firstBytes + middle) & 0xFF;
+            if (value < wanted) {
+                low = middle + 1;
+            } else if (value > wanted) {
+                high = middle - 1;
+            } else {
+                return buffer.getInt(offsets + middle * 4);
+            }
+        }
+        return -1;
+    }
+
+    private String readName(int offset) {
+        byte[] bytes = new byte[buffer.getInt(offset + 4)];
+        buffer.get(offset + 8, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Returns the number of distinct names
+    public int size() {
+        return nameCount;
+    }
+
+    public int getTopCount() {
+        return topCount;
+    }
+
+    // A distinct name with the review count of all its locations
+    private static final class Name {
+        final byte[] key;
+        String displayName;
+        int mostReviews = -1;
+        long reviewCount;
+        int offset;
+
+        Name(byte[] key) {
+            this.key = key;
+        }
+    }
+
+    // Orders names by review count, most first, ties by name so the file is the same every time
+    private static final Comparator<Name> BY_REVIEWS = (a, b) -> {
+        int byCount = Long.compare(b.reviewCount, a.reviewCount);
+        return byCount != 0 ? byCount : Arrays.compareUnsigned(a.key, b.key);
+    };
+
+    // Builds the index over the business names and writes it, replacing the old file in one step
+    public static void write(List<Business> businesses, String path, int topCount) throws IOException {
+        if (topCount < 1 || topCount > 255) {
+            throw new IllegalArgumentException("Top count must be between 1 and 255: " + topCount);
+        }
+        Map<String, Name> byKey = new HashMap<>();
+        for (Business business : businesses) {
+            if (business.getName() == null) {
+                continue;
+            }
+            String key = normalize(business.getName());
+            Name name = byKey.computeIfAbsent(key, k -> new Name(k.getBytes(StandardCharsets.UTF_8)));
+            name.reviewCount += business.getReview_count();
+            // Show the spelling of the location with the most reviews
+            if (business.getReview_count() > name.mostReviews) {
+                name.mostReviews = business.getReview_count();
+                name.displayName = business.getName();
+            }
+        }
+        Name[] names = byKey.values().toArray(new Name[0]);
+        // Byte order, so every subtree is a run of neighbouring names
+        Arrays.sort(names, (a, b) -> Arrays.compareUnsigned(a.key, b.key));
+
+        ByteArrayOutputStream bodyBytes = new ByteArrayOutputStream();
+        DataOutputStream body = new DataOutputStream(bodyBytes);
+        for (Name name : names) {
+            name.offset = HEADER_BYTES + body.size();
+            byte[] bytes = name.displayName.getBytes(StandardCharsets.UTF_8);
+            body.writeInt((int) Math.min(Integer.MAX_VALUE, name.reviewCount));
+            body.writeInt(bytes.length);
+            body.write(bytes);
+        }
+        int[] nodeCount = {0};
+        int rootOffset = names.length == 0 ? writeEmptyRoot(body, nodeCount) : writeNode(names, 0, names.length, 0, topCount, body, nodeCount).offset;
+
+        File indexFile = new File(path);
+        File tempFile = new File(path + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(names.length);
+            out.writeInt(topCount);
+            out.writeInt(rootOffset);
+            out.writeInt(nodeCount[0]);
+            out.write(new byte[HEADER_BYTES - 24]);
+            bodyBytes.writeTo(out);
+        }
+        if (!tempFile.renameTo(indexFile)) {
+            indexFile.delete();
+            if (!tempFile.renameTo(indexFile)) {
+                throw new IOException("Failed to write name prefix index at " + indexFile.getAbsolutePath());
+            }
+        }
+        System.out.println("Wrote name prefix index with " + names.length + " names in " + nodeCount[0] + " nodes ("
+                + indexFile.length() / 1024 + " KB).");
+    }
+
+    // Offset of a written node and the best names below it
+    private static final class WrittenNode {
+        final int offset;
+        final List<Name> top;
+
+        WrittenNode(int offset, List<Name> top) {
+            this.offset = offset;
+            this.top = top;
+        }
+    }
+
+    // Writes the node for the names in [from, to), which all share their first depth bytes, after its children.
+    // The node's label runs from depth to the end of what they all have in common.
+    private static WrittenNode writeNode(Name[] names, int from, int to, int depth, int topCount,
+                                         DataOutputStream body, int[] nodeCount) throws IOException {
+        byte[] first = names[from].key;
+        byte[] last = names[to - 1].key;
+        int end = depth;
+        while (end < first.length && end < last.length && first[end] == last[end]) {
+            end++;
+        }
+        // Label lengths are stored in a short, a longer shared run is split over a chain of nodes
+        end = Math.min(end, depth + 0xFFFF);
+
+        List<Name> candidates = new ArrayList<>();
+        // Sorted by bytes, so a name that ends here comes first
+        int childFrom = from;
+        if (first.length == end) {
+            candidates.add(names[from]);
+            childFrom++;
+        }
+        List<Byte> childBytes = new ArrayList<>();
+        List<Integer> childOffsets = new ArrayList<>();
+        while (childFrom < to) {
+            byte next = names[childFrom].key[end];
+            int childTo = childFrom + 1;
+            while (childTo < to && names[childTo].key[end] == next) {
+                childTo++;
+            }
+            WrittenNode child = writeNode(names, childFrom, childTo, end, topCount, body, nodeCount);
+            childBytes.add(next);
+            childOffsets.add(child.offset);
+            candidates.addAll(child.top);
+            childFrom = childTo;
+        }
+        candidates.sort(BY_REVIEWS);
+        List<Name> top = candidates.size() > topCount ? new ArrayList<>(candidates.subList(0, topCount)) : candidates;
+
+        int offset = HEADER_BYTES + body.size();
+        body.writeShort(end - depth);
+        body.write(first, depth, end - depth);
+        body.writeByte(top.size());
+        for (Name name : top) {
+            body.writeInt(name.offset);
+        }
+        body.writeShort(childBytes.size());
+        for (byte childByte : childBytes) {
+            body.writeByte(childByte);
+        }
+        for (int childOffset : childOffsets) {
+            body.writeInt(childOffset);
+        }
+        nodeCount[0]++;
+        return new WrittenNode(offset, top);
+    }
+
+    private static int writeEmptyRoot(DataOutputStream body, int[] nodeCount) throws IOException {
+        int offset = HEADER_BYTES + body.size();
+        body.writeShort(0);
+        body.writeByte(0);
+        body.writeShort(0);
+        nodeCount[0]++;
+        return offset;
+    }
+}
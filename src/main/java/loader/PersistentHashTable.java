@@ -1,52 +1,247 @@
 package main.java.loader;
 
+import main.java.service.IncrementalHashMap;
+
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
 import java.util.*;
 
-// Implements a hash table that can be serialized
-public class PersistentHashTable implements Serializable {
-    private final List<Map<String, String>> buckets;
+// On-disk hash table from lowercase keys to one or more values, used for business name -> IDs of every business
+// with that name (every location of a chain). The file is memory mapped and searched where it is, so opening it
+// reads nothing but the header and a lookup creates no objects apart from the returned values.
+// Layout: header (magic, version, entry count, slot count, heap offset), then the slots, then the string heap.
+// A slot is 16 bytes: the key's 64-bit hash (0 = empty), and the heap offsets of the key and its postings. Slots
+// are found with open addressing and linear probing from hash & (slotCount - 1), the table is at most half full.
+// Heap strings are [length (int)][UTF-8 bytes], postings are [count (int)] followed by count heap strings.
+public class PersistentHashTable {
+    private static final int MAGIC = 0x50485431; // "PHT1"
+    private static final int VERSION = 2;
+    private static final int HEADER_BYTES = 32;
+    private static final int SLOT_BYTES = 16;
+
+    private final MappedByteBuffer buffer;
+    private final int entryCount;
+    private final int slotMask;
+    private final int heapOffset;
 
-    // Constructor
-    public PersistentHashTable(int size) {
-        this.buckets = new ArrayList<>(Collections.nCopies(size, new HashMap<>()));
+    private PersistentHashTable(MappedByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_BYTES || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            throw new IOException("Not a hash table file");
+        }
+        this.entryCount = buffer.getInt(8);
+        int slotCount = buffer.getInt(12);
+        this.slotMask = slotCount - 1;
+        this.heapOffset = buffer.getInt(16);
+        if (Integer.bitCount(slotCount) != 1 || heapOffset != HEADER_BYTES + slotCount * SLOT_BYTES || heapOffset > buffer.capacity()) {
+            throw new IOException("Corrupt hash table header");
+        }
     }
 
-    // Puts a key-value pair into the hash table
-    public void put(String key, String value) {
-        String normalizedKey = key.toLowerCase();
-        int hash = normalizedKey.hashCode();
-        int bucketIndex = Math.abs(hash % buckets.size());
-        Map<String, String> bucket = buckets.get(bucketIndex);
-        bucket.put(normalizedKey, value);
+    // Maps a hash table file, nothing is deserialized
+    public static PersistentHashTable openMapped(String path) throws IOException {
+        try (FileChannel channel = FileChannel.open(new File(path).toPath(), StandardOpenOption.READ)) {
+            if (channel.size() > Integer.MAX_VALUE) {
+                throw new IOException("Hash table file is too big to map: " + path);
+            }
+            // The mapping stays valid after the channel is closed
+            return new PersistentHashTable(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
 
-        System.out.println("Putting key: " + normalizedKey + " with value: " + value + " into bucket: " + bucketIndex);
-        System.out.println("Current bucket size: " + bucket.size());
+    // Returns true if the file exists and is a table this version can read
+    public static boolean hasCurrentFormat(String path) {
+        try (DataInputStream in = new DataInputStream(new FileInputStream(path))) {
+            return in.readInt() == MAGIC && in.readInt() == VERSION;
+        } catch (IOException e) {
+            return false;
+        }
     }
 
-    // Retrieves a value associated with a key from the hash table
+    // Retrieves the first value associated with a key from the hash table, or null if there is none
     public String get(String key) {
+        int postings = findPostings(key);
+        return postings < 0 || buffer.getInt(heapOffset + postings) == 0 ? null : readString(postings + 4);
+    }
+
+    // Retrieves every value associated with a key, in the order they were put, or an empty list
+    public List<String> getAll(String key) {
+        int postings = findPostings(key);
+        if (postings < 0) {
+            return Collections.emptyList();
+        }
+        int count = buffer.getInt(heapOffset + postings);
+        List<String> values = new ArrayList<>(count);
+        int offset = postings + 4;
+        for (int i = 0; i < count; i++) {
+            values.add(readString(offset));
+            offset += 4 + buffer.getInt(heapOffset + offset);
+        }
+        return values;
+    }
+
+    // Returns the number of values associated with a key
+    public int count(String key) {
+        int postings = findPostings(key);
+        return postings < 0 ? 0 : buffer.getInt(heapOffset + postings);
+    }
+
+    // Returns the number of distinct keys
+    public int size() {
+        return entryCount;
+    }
+
+    // Probes for a key and returns the heap offset of its postings, or -1 if the key isn't in the table
+    private int findPostings(String key) {
         String normalizedKey = key.toLowerCase();
-        int hash = normalizedKey.hashCode();
-        int bucketIndex = Math.abs(hash % buckets.size());
-        Map<String, String> bucket = buckets.get(bucketIndex);
-        String value = bucket.get(normalizedKey);
+        byte[] keyBytes = normalizedKey.getBytes(StandardCharsets.UTF_8);
+        long hash = hash(keyBytes);
+        int slot = (int) hash & slotMask;
+        while (true) {
+            int slotOffset = HEADER_BYTES + slot * SLOT_BYTES;
+            long slotHash = buffer.getLong(slotOffset);
+            if (slotHash == 0) {
+                return -1;
+            }
+            if (slotHash == hash && keyEquals(buffer.getInt(slotOffset + 8), keyBytes)) {
+                return buffer.getInt(slotOffset + 12);
+            }
+            slot = (slot + 1) & slotMask;
+        }
+    }
+
+    // Compares the heap string at offset with the key bytes without decoding it
+    private boolean keyEquals(int offset, byte[] keyBytes) {
+        int position = heapOffset + offset;
+        if (buffer.getInt(position) != keyBytes.length) {
+            return false;
+        }
+        position += 4;
+        for (int i = 0; i < keyBytes.length; i++) {
+            if (buffer.get(position + i) != keyBytes[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
 
-        System.out.println("Retrieving key: " + normalizedKey + " from bucket: " + bucketIndex + ". Found: " + value);
-        return value;
+    private String readString(int offset) {
+        int position = heapOffset + offset;
+        byte[] bytes = new byte[buffer.getInt(position)];
+        buffer.get(position + 4, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
     }
 
-    /* // ?????
-    public void serializeToFile(String path) throws IOException {
-        try (ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream(path))) {
-            oos.writeObject(this);
+    // 64-bit FNV-1a of the key's UTF-8 bytes, never 0 since 0 marks an empty slot
+    private static long hash(byte[] keyBytes) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : keyBytes) {
+            hash ^= b & 0xFF;
+            hash *= 0x100000001b3L;
+        }
+        return hash == 0 ? 1 : hash;
+    }
+
+    // Collects the entries in memory and writes them out as a table file. Keys are found by their 64-bit hash in an
+    // IncrementalHashMap that gives the entry number, so building a big map never stalls on a rehash. Keys whose
+    // hashes collide are chained through nextWithSameHash.
+    public static class Builder {
+        private final IncrementalHashMap entryByHash = new IncrementalHashMap();
+        private final List<String> keys = new ArrayList<>();
+        private final List<List<String>> postings = new ArrayList<>();
+        private long[] hashes = new long[16];
+        private int[] nextWithSameHash = new int[16];
+        private int valueCount;
+
+        // Adds a value to the postings of a key, earlier values for the same key are kept
+        public void put(String key, String value) {
+            String normalizedKey = key.toLowerCase();
+            postings.get(findOrAddEntry(normalizedKey)).add(value);
+            valueCount++;
+        }
+
+        // Returns the entry number of a key, adding an entry with no values if the key is new
+        private int findOrAddEntry(String normalizedKey) {
+            long hash = hash(normalizedKey.getBytes(StandardCharsets.UTF_8));
+            int first = entryByHash.get(hash, -1);
+            for (int entry = first; entry >= 0; entry = nextWithSameHash[entry]) {
+                if (keys.get(entry).equals(normalizedKey)) {
+                    return entry;
+                }
+            }
+            int entry = keys.size();
+            if (entry == hashes.length) {
+                hashes = Arrays.copyOf(hashes, entry * 2);
+                nextWithSameHash = Arrays.copyOf(nextWithSameHash, entry * 2);
+            }
+            keys.add(normalizedKey);
+            postings.add(new ArrayList<>(1));
+            hashes[entry] = hash;
+            nextWithSameHash[entry] = first;
+            entryByHash.put(hash, entry);
+            return entry;
+        }
+
+        // Returns the number of distinct keys
+        public int size() {
+            return keys.size();
+        }
+
+        public int getValueCount() {
+            return valueCount;
+        }
+
+        // Writes the table, replacing the old file in one step
+        public void writeToFile(String path) throws IOException {
+            int slotCount = Integer.highestOneBit(Math.max(2, keys.size() * 2 - 1)) << 1;
+            int slotMask = slotCount - 1;
+            ByteBuffer slots = ByteBuffer.allocate(slotCount * SLOT_BYTES);
+            ByteArrayOutputStream heapBytes = new ByteArrayOutputStream();
+            DataOutputStream heap = new DataOutputStream(heapBytes);
+            for (int entry = 0; entry < keys.size(); entry++) {
+                byte[] keyBytes = keys.get(entry).getBytes(StandardCharsets.UTF_8);
+                long hash = hashes[entry];
+                int slot = (int) hash & slotMask;
+                while (slots.getLong(slot * SLOT_BYTES) != 0) {
+                    slot = (slot + 1) & slotMask;
+                }
+                slots.putLong(slot * SLOT_BYTES, hash);
+                slots.putInt(slot * SLOT_BYTES + 8, heap.size());
+                writeString(heap, keyBytes);
+                slots.putInt(slot * SLOT_BYTES + 12, heap.size());
+                heap.writeInt(postings.get(entry).size());
+                for (String value : postings.get(entry)) {
+                    writeString(heap, value.getBytes(StandardCharsets.UTF_8));
+                }
+            }
+
+            File tableFile = new File(path);
+            File tempFile = new File(path + ".tmp");
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+                out.writeInt(MAGIC);
+                out.writeInt(VERSION);
+                out.writeInt(keys.size());
+                out.writeInt(slotCount);
+                out.writeInt(HEADER_BYTES + slotCount * SLOT_BYTES);
+                out.write(new byte[HEADER_BYTES - 20]);
+                out.write(slots.array());
+                heapBytes.writeTo(out);
+            }
+            if (!tempFile.renameTo(tableFile)) {
+                tableFile.delete();
+                if (!tempFile.renameTo(tableFile)) {
+                    throw new IOException("Failed to write hash table at " + tableFile.getAbsolutePath());
+                }
+            }
         }
-    }*/
 
-    // Loads a hash table from a file and returns it as a PersistentHashTable object.
-    public static PersistentHashTable deserializeFromFile(String path) throws IOException, ClassNotFoundException {
-        try (ObjectInputStream ois = new ObjectInputStream(new FileInputStream(path))) {
-            return (PersistentHashTable) ois.readObject();
+        private static void writeString(DataOutputStream heap, byte[] bytes) throws IOException {
+            heap.writeInt(bytes.length);
+            heap.write(bytes);
         }
     }
 }
\ No newline at end of file
@@ -0,0 +1,467 @@
+package main.java.loader;
+
+import main.java.model.Business;
+import main.java.model.Review;
+import main.java.model.TextArena;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.function.Function;
+
+// Hand-written binary format for businesses and reviews, used instead of Java serialization for the record stores.
+// Every record starts with a format version byte. Integers are varints, strings are UTF-8 with a varint length
+// (0 = null), attribute values are packed two bits each, and neighbours are written as business IDs so a record
+// never drags in the businesses it points to. Neighbour IDs are turned back into objects by NeighborLinks once
+// the businesses they name are loaded.
+public final class RecordCodec {
+    private static final int BUSINESS_VERSION = 1;
+    private static final int REVIEW_VERSION = 1;
+
+    // Attribute and day names written as a small code instead of a string. Only ever append to these lists,
+    // the position of a name is part of the format.
+    private static final List<String> KNOWN_ATTRIBUTES = List.of(
+            "BusinessAcceptsCreditCards", "BikeParking", "GoodForKids", "BusinessParking", "ByAppointmentOnly",
+            "RestaurantsPriceRange2", "OutdoorSeating", "RestaurantsTakeOut", "RestaurantsDelivery", "RestaurantsGoodForGroups",
+            "RestaurantsReservations", "WiFi", "HasTV", "Alcohol", "Caters", "WheelchairAccessible", "NoiseLevel", "Ambience",
+            "RestaurantsAttire", "DogsAllowed", "GoodForMeal", "HappyHour", "RestaurantsTableService", "BusinessAcceptsBitcoin",
+            "DriveThru", "AcceptsInsurance", "Music", "BestNights", "GoodForDancing", "CoatCheck", "Smoking", "BYOB", "Corkage",
+            "BYOBCorkage", "RestaurantsCounterService", "AgesAllowed", "DietaryRestrictions", "HairSpecializesIn", "Open24Hours");
+    private static final List<String> KNOWN_DAYS = List.of("Monday", "Tuesday", "Wednesday", "Thursday", "Friday", "Saturday", "Sunday");
+
+    // Two-bit attribute values
+    private static final int ATTRIBUTE_FALSE = 0;
+    private static final int ATTRIBUTE_TRUE = 1;
+    private static final int ATTRIBUTE_NULL = 2;
+
+    private RecordCodec() {
+    }
+
+    // Neighbour IDs read from business records, waiting for the businesses they name
+    public static final class NeighborLinks {
+        private final List<Business> businesses = new ArrayList<>();
+        private final List<String[]> neighborIds = new ArrayList<>();
+        private final List<double[]> distances = new ArrayList<>();
+
+        void add(Business business, String[] ids, double[] neighborDistances) {
+            if (ids.length > 0) {
+                businesses.add(business);
+                neighborIds.add(ids);
+                distances.add(neighborDistances);
+            }
+        }
+
+        // Links every decoded business to its neighbours, IDs the lookup can't find are left out
+        public void resolve(Function<String, Business> lookup) {
+            for (int i = 0; i < businesses.size(); i++) {
+                String[] ids = neighborIds.get(i);
+                for (int j = 0; j < ids.length; j++) {
+                    Business neighbor = lookup.apply(ids[j]);
+                    if (neighbor != null) {
+                        businesses.get(i).addNeighbor(neighbor, distances.get(i)[j]);
+                    }
+                }
+            }
+            businesses.clear();
+            neighborIds.clear();
+            distances.clear();
+        }
+    }
+
+    // Encodes a business
+    public static byte[] encodeBusiness(Business business) {
+        ByteWriter out = new ByteWriter(128);
+        out.writeByte(BUSINESS_VERSION);
+        out.writeString(business.getBusiness_id());
+        out.writeString(business.getName());
+        out.writeString(business.getAddress());
+        out.writeString(business.getCity());
+        out.writeString(business.getState());
+        out.writeString(business.getPostal_code());
+        out.writeDouble(business.getLatitude());
+        out.writeDouble(business.getLongitude());
+        out.writeFloat(business.getStars());
+        out.writeVarint(business.getReview_count());
+        out.writeByte(business.is_open() ? 1 : 0);
+        writeAttributes(out, business.getAttributes());
+        out.writeString(business.getCategories());
+        writeHours(out, business.getHours());
+        out.writeString(business.getPhoneNumber());
+
+        Map<Business, Double> neighbors = business.getNeighbors();
+        out.writeVarint(neighbors == null ? 0 : neighbors.size());
+        if (neighbors != null) {
+            for (Map.Entry<Business, Double> neighbor : neighbors.entrySet()) {
+                out.writeString(neighbor.getKey().getBusiness_id());
+                out.writeDouble(neighbor.getValue());
+            }
+        }
+        return out.toByteArray();
+    }
+
+    // Decodes a business, its neighbour IDs go into links to be resolved after loading
+    public static Business decodeBusiness(byte[] bytes, NeighborLinks links) throws IOException {
+        ByteReader in = new ByteReader(bytes);
+        int version = in.readByte();
+        if (version != BUSINESS_VERSION) {
+            throw new IOException("Unsupported business record version " + version);
+        }
+        String businessId = in.readString();
+        String name = in.readString();
+        String address = in.readString();
+        String city = in.readString();
+        String state = in.readString();
+        String postalCode = in.readString();
+        double latitude = in.readDouble();
+        double longitude = in.readDouble();
+        float stars = in.readFloat();
+        int reviewCount = in.readVarint();
+        int isOpen = in.readByte();
+        Map<String, Boolean> attributes = readAttributes(in);
+        String categories = in.readString();
+        Map<String, String> hours = readHours(in);
+        String phoneNumber = in.readString();
+        Business business = new Business(businessId, name, address, city, state, postalCode, latitude, longitude, stars,
+                reviewCount, isOpen, attributes, categories, hours, phoneNumber);
+
+        int neighborCount = in.readVarint();
+        String[] neighborIds = new String[neighborCount];
+        double[] distances = new double[neighborCount];
+        for (int i = 0; i < neighborCount; i++) {
+            neighborIds[i] = in.readString();
+            distances[i] = in.readDouble();
+        }
+        links.add(business, neighborIds, distances);
+        return business;
+    }
+
+    // Encodes only the attributes and opening hours of a business, for stores that keep the other fields elsewhere
+    static byte[] encodeDetails(Business business) {
+        ByteWriter out = new ByteWriter(64);
+        writeAttributes(out, business.getAttributes());
+        writeHours(out, business.getHours());
+        return out.toByteArray();
+    }
+
+    // Reads attributes and opening hours written by encodeDetails into the business
+    static void decodeDetails(byte[] bytes, Business business) throws IOException {
+        ByteReader in = new ByteReader(bytes);
+        business.setAttributes(readAttributes(in));
+        business.setHours(readHours(in));
+    }
+
+    // Encodes a review
+    public static byte[] encodeReview(Review review) {
+        String text = review.getText();
+        ByteWriter out = new ByteWriter(64 + (text == null ? 0 : text.length() + text.length() / 8));
+        out.writeByte(REVIEW_VERSION);
+        out.writeString(review.getReview_id());
+        out.writeString(review.getUser_id());
+        out.writeString(review.getBusiness_id());
+        out.writeSignedVarint(review.getStars());
+        out.writeString(review.getDate());
+        out.writeString(text);
+        out.writeSignedVarint(review.getUseful());
+        out.writeSignedVarint(review.getFunny());
+        out.writeSignedVarint(review.getCool());
+        return out.toByteArray();
+    }
+
+    // Decodes a review
+    public static Review decodeReview(byte[] bytes) throws IOException {
+        return readReview(new ByteReader(bytes), null);
+    }
+
+    // Decodes a review whose record sits in an arena. Only the short fields are copied onto the heap,
+    // the review's text stays in the arena where it is and the review just points at it.
+    public static Review decodeReview(TextArena arena, int offset, int length) throws IOException {
+        return readReview(new ByteReader(arena.buffer(), offset, length), arena);
+    }
+
+    // Reads a review, with the text as a String or, if arena isn't null, as an offset in its buffer
+    private static Review readReview(ByteReader in, TextArena arena) throws IOException {
+        int version = in.readByte();
+        if (version != REVIEW_VERSION) {
+            throw new IOException("Unsupported review record version " + version);
+        }
+        String reviewId = in.readString();
+        String userId = in.readString();
+        String businessId = in.readString();
+        int stars = in.readSignedVarint();
+        String date = in.readString();
+        String text = null;
+        int textOffset = 0;
+        int textLength = -1;
+        if (arena == null) {
+            text = in.readString();
+        } else {
+            textLength = in.readVarint() - 1;
+            if (textLength >= 0) {
+                textOffset = in.skip(textLength);
+            }
+        }
+        int useful = in.readSignedVarint();
+        int funny = in.readSignedVarint();
+        int cool = in.readSignedVarint();
+        if (textLength >= 0) {
+            return new Review(reviewId, userId, businessId, stars, date, arena, textOffset, textLength, useful, funny, cool);
+        }
+        return new Review(reviewId, userId, businessId, stars, date, text, useful, funny, cool);
+    }
+
+    // Count + 1 (0 = null map), the attribute names, then every value packed into two bits
+    private static void writeAttributes(ByteWriter out, Map<String, Boolean> attributes) {
+        if (attributes == null) {
+            out.writeVarint(0);
+            return;
+        }
+        out.writeVarint(attributes.size() + 1);
+        byte[] packed = new byte[(attributes.size() + 3) / 4];
+        int index = 0;
+        for (Map.Entry<String, Boolean> attribute : attributes.entrySet()) {
+            writeName(out, KNOWN_ATTRIBUTES, attribute.getKey());
+            Boolean value = attribute.getValue();
+            int bits = value == null ? ATTRIBUTE_NULL : value ? ATTRIBUTE_TRUE : ATTRIBUTE_FALSE;
+            packed[index >> 2] |= (byte) (bits << ((index & 3) * 2));
+            index++;
+        }
+        out.writeBytes(packed);
+    }
+
+    private static Map<String, Boolean> readAttributes(ByteReader in) throws IOException {
+        int count = in.readVarint() - 1;
+        if (count < 0) {
+            return null;
+        }
+        String[] names = new String[count];
+        for (int i = 0; i < count; i++) {
+            names[i] = readName(in, KNOWN_ATTRIBUTES);
+        }
+        byte[] packed = in.readBytes((count + 3) / 4);
+        Map<String, Boolean> attributes = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            int bits = (packed[i >> 2] >> ((i & 3) * 2)) & 3;
+            attributes.put(names[i], bits == ATTRIBUTE_NULL ? null : bits == ATTRIBUTE_TRUE);
+        }
+        return attributes;
+    }
+
+    // Count + 1 (0 = null map), then day name and opening hours per entry
+    private static void writeHours(ByteWriter out, Map<String, String> hours) {
+        if (hours == null) {
+            out.writeVarint(0);
+            return;
+        }
+        out.writeVarint(hours.size() + 1);
+        for (Map.Entry<String, String> day : hours.entrySet()) {
+            writeName(out, KNOWN_DAYS, day.getKey());
+            out.writeString(day.getValue());
+        }
+    }
+
+    private static Map<String, String> readHours(ByteReader in) throws IOException {
+        int count = in.readVarint() - 1;
+        if (count < 0) {
+            return null;
+        }
+        Map<String, String> hours = new HashMap<>(count * 2);
+        for (int i = 0; i < count; i++) {
+            hours.put(readName(in, KNOWN_DAYS), in.readString());
+        }
+        return hours;
+    }
+
+    // A known name is written as its position + 1, anything else as 0 followed by the string
+    private static void writeName(ByteWriter out, List<String> knownNames, String name) {
+        int code = knownNames.indexOf(name);
+        out.writeVarint(code + 1);
+        if (code < 0) {
+            out.writeString(name);
+        }
+    }
+
+    private static String readName(ByteReader in, List<String> knownNames) throws IOException {
+        int code = in.readVarint();
+        if (code == 0) {
+            return in.readString();
+        }
+        if (code > knownNames.size()) {
+            throw new IOException("Unknown name code " + code);
+        }
+        return knownNames.get(code - 1);
+    }
+
+    // Growable byte buffer with the primitive writers the format needs
+    private static final class ByteWriter {
+        private byte[] bytes;
+        private int length;
+
+        ByteWriter(int capacity) {
+            this.bytes = new byte[Math.max(16, capacity)];
+        }
+
+        void writeByte(int value) {
+            ensureCapacity(1);
+            bytes[length++] = (byte) value;
+        }
+
+        void writeBytes(byte[] values) {
+            ensureCapacity(values.length);
+            System.arraycopy(values, 0, bytes, length, values.length);
+            length += values.length;
+        }
+
+        // Seven bits per byte, high bit set on every byte but the last
+        void writeVarint(int value) {
+            ensureCapacity(5);
+            while ((value & ~0x7F) != 0) {
+                bytes[length++] = (byte) ((value & 0x7F) | 0x80);
+                value >>>= 7;
+            }
+            bytes[length++] = (byte) value;
+        }
+
+        // ZigZag so small negative numbers stay short too
+        void writeSignedVarint(int value) {
+            writeVarint((value << 1) ^ (value >> 31));
+        }
+
+        void writeDouble(double value) {
+            long bits = Double.doubleToLongBits(value);
+            writeInt((int) (bits >>> 32));
+            writeInt((int) bits);
+        }
+
+        void writeFloat(float value) {
+            writeInt(Float.floatToIntBits(value));
+        }
+
+        void writeInt(int value) {
+            ensureCapacity(4);
+            bytes[length++] = (byte) (value >>> 24);
+            bytes[length++] = (byte) (value >>> 16);
+            bytes[length++] = (byte) (value >>> 8);
+            bytes[length++] = (byte) value;
+        }
+
+        // Length + 1 so that 0 can stand for null
+        void writeString(String value) {
+            if (value == null) {
+                writeVarint(0);
+                return;
+            }
+            byte[] utf8 = value.getBytes(StandardCharsets.UTF_8);
+            writeVarint(utf8.length + 1);
+            writeBytes(utf8);
+        }
+
+        byte[] toByteArray() {
+            return Arrays.copyOf(bytes, length);
+        }
+
+        private void ensureCapacity(int extra) {
+            if (length + extra > bytes.length) {
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, length + extra));
+            }
+        }
+    }
+
+    // Reader over one encoded record
+    private static final class ByteReader {
+        private final ByteBuffer buffer;
+        private final int limit;
+        private int position;
+
+        ByteReader(byte[] bytes) {
+            this(ByteBuffer.wrap(bytes), 0, bytes.length);
+        }
+
+        // Reader over part of a buffer, only absolute gets are used so the buffer can be shared
+        ByteReader(ByteBuffer buffer, int offset, int length) {
+            this.buffer = buffer;
+            this.position = offset;
+            this.limit = offset + length;
+        }
+
+        int readByte() throws IOException {
+            require(1);
+            return buffer.get(position++) & 0xFF;
+        }
+
+        byte[] readBytes(int count) throws IOException {
+            require(count);
+            byte[] values = new byte[count];
+            buffer.get(position, values);
+            position += count;
+            return values;
+        }
+
+        // Skips count bytes and returns where they start
+        int skip(int count) throws IOException {
+            require(count);
+            int start = position;
+            position += count;
+            return start;
+        }
+
+        int readVarint() throws IOException {
+            int value = 0;
+            for (int shift = 0; shift < 35; shift += 7) {
+                int b = readByte();
+                value |= (b & 0x7F) << shift;
+                if ((b & 0x80) == 0) {
+                    return value;
+                }
+            }
+            throw new IOException("Malformed varint");
+        }
+
+        int readSignedVarint() throws IOException {
+            int value = readVarint();
+            return (value >>> 1) ^ -(value & 1);
+        }
+
+        double readDouble() throws IOException {
+            long high = readInt() & 0xFFFFFFFFL;
+            long low = readInt() & 0xFFFFFFFFL;
+            return Double.longBitsToDouble(high << 32 | low);
+        }
+
+        float readFloat() throws IOException {
+            return Float.intBitsToFloat(readInt());
+        }
+
+        int readInt() throws IOException {
+            require(4);
+            int value = (buffer.get(position) & 0xFF) << 24 | (buffer.get(position + 1) & 0xFF) << 16
+                    | (buffer.get(position + 2) & 0xFF) << 8 | (buffer.get(position + 3) & 0xFF);
+            position += 4;
+            return value;
+        }
+
+        String readString() throws IOException {
+            int length = readVarint() - 1;
+            if (length < 0) {
+                return null;
+            }
+            require(length);
+            String value;
+            if (buffer.hasArray()) {
+                value = new String(buffer.array(), buffer.arrayOffset() + position, length, StandardCharsets.UTF_8);
+            } else {
+                byte[] bytes = new byte[length];
+                buffer.get(position, bytes);
+                value = new String(bytes, StandardCharsets.UTF_8);
+            }
+            position += length;
+            return value;
+        }
+
+        private void require(int count) throws IOException {
+            if (count < 0 || position + count > limit) {
+                throw new EOFException("Record ends early");
+            }
+        }
+    }
+}
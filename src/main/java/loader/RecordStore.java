@@ -0,0 +1,380 @@
+package main.java.loader;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+
+// Append-only store for many small records, kept in a few large segment files instead of one file per record.
+// Every record is written as [ID length (short)][record ID (UTF-8)][payload length (int)][payload] at the end of the current segment,
+// and an in-memory index maps the ID to (segment, payload offset, payload length). Bulk loads read the segments
+// front to back, a single record is one positioned read. The index is saved next to the segments on close and
+// rebuilt by scanning the segments if it is missing or doesn't match them (e.g. after a crash). Deleting a record
+// appends a tombstone, a payload length of -1.
+public class RecordStore implements Closeable {
+    private static final int INDEX_MAGIC = 0x52535449; // "RSTI"
+    private static final int INDEX_VERSION = 1;
+    private static final String INDEX_FILE = "index.dat";
+    private static final long DEFAULT_SEGMENT_BYTES = 256L * 1024 * 1024;
+    // Payload length that marks a deleted record
+    private static final int TOMBSTONE = -1;
+
+    private final File directory;
+    private final long segmentBytes;
+    private final List<FileChannel> segmentChannels = new ArrayList<>();
+
+    // Index: record ID -> slot in the location arrays
+    private final Map<String, Integer> slots = new HashMap<>();
+    private int[] segments = new int[1024];
+    private long[] offsets = new long[1024];
+    private int[] lengths = new int[1024];
+    // Slots of deleted records aren't reused, so new records always take the next one
+    private int nextSlot;
+
+    // Writer for the last segment, opened on the first append
+    private DataOutputStream writer;
+    private long writePosition;
+    private boolean dirty;
+
+    private RecordStore(File directory, long segmentBytes) {
+        this.directory = directory;
+        this.segmentBytes = segmentBytes;
+    }
+
+    // Opens the store in the directory, creating it if needed and keeping any records already there
+    public static RecordStore open(String directoryPath) throws IOException {
+        return open(directoryPath, DEFAULT_SEGMENT_BYTES);
+    }
+
+    // Opens the store with a custom segment size
+    static RecordStore open(String directoryPath, long segmentBytes) throws IOException {
+        RecordStore store = new RecordStore(createDirectory(directoryPath), segmentBytes);
+        store.openSegments();
+        if (!store.readIndex()) {
+            store.rebuildIndex();
+        }
+        return store;
+    }
+
+    // Opens an empty store in the directory, deleting the segments and index of any earlier store there
+    public static RecordStore create(String directoryPath) throws IOException {
+        File directory = createDirectory(directoryPath);
+        File[] oldFiles = directory.listFiles((dir, name) -> isSegmentFile(name) || name.equals(INDEX_FILE));
+        if (oldFiles != null) {
+            for (File oldFile : oldFiles) {
+                if (!oldFile.delete()) {
+                    throw new IOException("Failed to delete old store file " + oldFile.getAbsolutePath());
+                }
+            }
+        }
+        return open(directoryPath);
+    }
+
+    // Appends a record, replacing any earlier record with the same ID. Safe to call from several threads.
+    public synchronized void append(String id, byte[] payload) throws IOException {
+        if (writer == null || writePosition > 0 && writePosition + payload.length > segmentBytes) {
+            startSegment();
+        }
+        int segment = segmentChannels.size() - 1;
+        byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+        writer.writeShort(idBytes.length);
+        writer.write(idBytes);
+        writer.writeInt(payload.length);
+        writer.write(payload);
+        long payloadOffset = writePosition + 2 + idBytes.length + 4;
+        writePosition = payloadOffset + payload.length;
+        putLocation(id, segment, payloadOffset, payload.length);
+        dirty = true;
+    }
+
+    // Deletes a record by appending a tombstone for it, returns false if there was no such record
+    public synchronized boolean delete(String id) throws IOException {
+        if (!slots.containsKey(id)) {
+            return false;
+        }
+        if (writer == null) {
+            startSegment();
+        }
+        byte[] idBytes = id.getBytes(StandardCharsets.UTF_8);
+        writer.writeShort(idBytes.length);
+        writer.write(idBytes);
+        writer.writeInt(TOMBSTONE);
+        writePosition += 2 + idBytes.length + 4;
+        slots.remove(id);
+        dirty = true;
+        return true;
+    }
+
+    // IDs of every current record
+    public synchronized List<String> ids() {
+        return new ArrayList<>(slots.keySet());
+    }
+
+    // Reads one record with a single positioned read, returns null if there is no record with this ID
+    public byte[] read(String id) throws IOException {
+        FileChannel channel;
+        long offset;
+        int length;
+        synchronized (this) {
+            Integer slot = slots.get(id);
+            if (slot == null) {
+                return null;
+            }
+            int segment = segments[slot];
+            // Taken under the lock, an append on another thread may be adding a segment to the list
+            channel = segmentChannels.get(segment);
+            offset = offsets[slot];
+            length = lengths[slot];
+            // The record may still be sitting in the writer's buffer
+            if (writer != null && segment == segmentChannels.size() - 1) {
+                writer.flush();
+            }
+        }
+        ByteBuffer buffer = ByteBuffer.allocate(length);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, offset + buffer.position()) < 0) {
+                throw new EOFException("Record " + id + " runs past the end of its segment");
+            }
+        }
+        return buffer.array();
+    }
+
+    // Reads every current record in the order they were written, segment by segment. Safe to run while other
+    // threads append or delete: the segments are read through their files, not the shared channels, and every
+    // record is checked against the index under the lock. Records written during the scan may or may not be seen.
+    public void forEach(RecordConsumer consumer) throws IOException, ClassNotFoundException {
+        int segmentCount;
+        synchronized (this) {
+            flush();
+            segmentCount = segmentChannels.size();
+        }
+        for (int segment = 0; segment < segmentCount; segment++) {
+            int currentSegment = segment;
+            scanSegment(segment, (id, payloadOffset, payload) -> {
+                // Skip tombstones and records that were replaced or deleted later
+                if (payload != null && isCurrent(id, currentSegment, payloadOffset)) {
+                    consumer.accept(id, payload);
+                }
+            });
+        }
+    }
+
+    // Returns true if the index still points at the record at this place
+    private synchronized boolean isCurrent(String id, int segment, long payloadOffset) {
+        Integer slot = slots.get(id);
+        return slot != null && segments[slot] == segment && offsets[slot] == payloadOffset;
+    }
+
+    public synchronized boolean contains(String id) {
+        return slots.containsKey(id);
+    }
+
+    public synchronized int size() {
+        return slots.size();
+    }
+
+    // Pushes buffered records to disk and saves the index
+    public synchronized void flush() throws IOException {
+        if (writer != null) {
+            writer.flush();
+        }
+        if (dirty) {
+            writeIndex();
+            dirty = false;
+        }
+    }
+
+    @Override
+    public synchronized void close() throws IOException {
+        flush();
+        if (writer != null) {
+            writer.close();
+            writer = null;
+        }
+        for (FileChannel channel : segmentChannels) {
+            channel.close();
+        }
+    }
+
+    // Starts writing at the end of the last segment, or in a new segment once the last one is full
+    private void startSegment() throws IOException {
+        int segment = segmentChannels.size() - 1;
+        if (writer != null) {
+            // The writer just filled its segment up
+            writer.close();
+            segment++;
+        } else if (segment < 0 || segmentChannels.get(segment).size() >= segmentBytes) {
+            segment++;
+        }
+        if (segment == segmentChannels.size()) {
+            segmentChannels.add(FileChannel.open(segmentFile(segment).toPath(),
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE));
+        }
+        writePosition = segmentChannels.get(segment).size();
+        writer = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(segmentFile(segment), true), 1 << 16));
+    }
+
+    // Opens every existing segment for positioned reads
+    private void openSegments() throws IOException {
+        for (int segment = 0; segmentFile(segment).exists(); segment++) {
+            segmentChannels.add(FileChannel.open(segmentFile(segment).toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE));
+        }
+    }
+
+    // Loads the saved index, returns false if it is missing or was saved for different segment contents
+    private boolean readIndex() throws IOException {
+        File indexFile = new File(directory, INDEX_FILE);
+        if (!indexFile.exists()) {
+            return segmentChannels.isEmpty();
+        }
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            if (in.readInt() != INDEX_MAGIC || in.readInt() != INDEX_VERSION) {
+                return false;
+            }
+            int segmentCount = in.readInt();
+            if (segmentCount != segmentChannels.size()) {
+                return false;
+            }
+            for (int segment = 0; segment < segmentCount; segment++) {
+                if (in.readLong() != segmentChannels.get(segment).size()) {
+                    return false;
+                }
+            }
+            int count = in.readInt();
+            for (int i = 0; i < count; i++) {
+                putLocation(in.readUTF(), in.readInt(), in.readLong(), in.readInt());
+            }
+            return true;
+        } catch (EOFException e) {
+            slots.clear();
+            return false;
+        }
+    }
+
+    // Saves the index together with the segment sizes it describes
+    private void writeIndex() throws IOException {
+        File indexFile = new File(directory, INDEX_FILE);
+        File tempFile = new File(directory, INDEX_FILE + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tempFile)))) {
+            out.writeInt(INDEX_MAGIC);
+            out.writeInt(INDEX_VERSION);
+            out.writeInt(segmentChannels.size());
+            for (FileChannel channel : segmentChannels) {
+                out.writeLong(channel.size());
+            }
+            out.writeInt(slots.size());
+            for (Map.Entry<String, Integer> entry : slots.entrySet()) {
+                int slot = entry.getValue();
+                out.writeUTF(entry.getKey());
+                out.writeInt(segments[slot]);
+                out.writeLong(offsets[slot]);
+                out.writeInt(lengths[slot]);
+            }
+        }
+        // Replace the old index in one step so a crash never leaves half an index behind
+        if (!tempFile.renameTo(indexFile)) {
+            indexFile.delete();
+            if (!tempFile.renameTo(indexFile)) {
+                throw new IOException("Failed to save store index at " + indexFile.getAbsolutePath());
+            }
+        }
+    }
+
+    // Rebuilds the index by scanning every segment, cutting off a record left half-written by a crash
+    private void rebuildIndex() throws IOException {
+        System.out.println("Rebuilding record store index in " + directory.getPath() + "...");
+        slots.clear();
+        for (int segment = 0; segment < segmentChannels.size(); segment++) {
+            int currentSegment = segment;
+            long validLength;
+            try {
+                validLength = scanSegment(segment, (id, payloadOffset, payload) -> {
+                    if (payload == null) {
+                        slots.remove(id);
+                    } else {
+                        putLocation(id, currentSegment, payloadOffset, payload.length);
+                    }
+                });
+            } catch (ClassNotFoundException e) {
+                // Can't happen, indexing never decodes a payload
+                throw new IllegalStateException(e);
+            }
+            FileChannel channel = segmentChannels.get(segment);
+            if (validLength < channel.size()) {
+                channel.truncate(validLength);
+            }
+        }
+        dirty = true;
+        flush();
+    }
+
+    // Receives the records of forEach, decoding a payload may fail the same way Java deserialization does
+    public interface RecordConsumer {
+        void accept(String id, byte[] payload) throws IOException, ClassNotFoundException;
+    }
+
+    // Gets null as payload for a tombstone
+    private interface RecordVisitor {
+        void visit(String id, long payloadOffset, byte[] payload) throws IOException, ClassNotFoundException;
+    }
+
+    // Reads a segment front to back and returns the length of its complete records
+    private long scanSegment(int segment, RecordVisitor visitor) throws IOException, ClassNotFoundException {
+        long position = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(segmentFile(segment)), 1 << 16))) {
+            while (true) {
+                int idLength = in.readUnsignedShort();
+                byte[] idBytes = new byte[idLength];
+                in.readFully(idBytes);
+                int payloadLength = in.readInt();
+                if (payloadLength == TOMBSTONE) {
+                    position += 2 + idLength + 4;
+                    visitor.visit(new String(idBytes, StandardCharsets.UTF_8), position, null);
+                    continue;
+                }
+                byte[] payload = new byte[payloadLength];
+                in.readFully(payload);
+                long payloadOffset = position + 2 + idLength + 4;
+                visitor.visit(new String(idBytes, StandardCharsets.UTF_8), payloadOffset, payload);
+                position = payloadOffset + payloadLength;
+            }
+        } catch (EOFException e) {
+            // End of the segment, possibly in the middle of a record that never finished
+        }
+        return position;
+    }
+
+    private void putLocation(String id, int segment, long offset, int length) {
+        Integer slot = slots.get(id);
+        if (slot == null) {
+            slot = nextSlot++;
+            if (slot == segments.length) {
+                segments = Arrays.copyOf(segments, slot * 2);
+                offsets = Arrays.copyOf(offsets, slot * 2);
+                lengths = Arrays.copyOf(lengths, slot * 2);
+            }
+            slots.put(id, slot);
+        }
+        segments[slot] = segment;
+        offsets[slot] = offset;
+        lengths[slot] = length;
+    }
+
+    private File segmentFile(int segment) {
+        return new File(directory, String.format("segment-%05d.dat", segment));
+    }
+
+    private static boolean isSegmentFile(String name) {
+        return name.startsWith("segment-") && name.endsWith(".dat");
+    }
+
+    private static File createDirectory(String directoryPath) throws IOException {
+        File directory = new File(directoryPath);
+        if (!directory.exists() && !directory.mkdirs()) {
+            throw new IOException("Failed to create record store directory at " + directory.getAbsolutePath());
+        }
+        return directory;
+    }
+}
@@ -0,0 +1,147 @@
+package main.java.loader;
+
+import main.java.model.Review;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.util.*;
+
+// Pages the reviews of a business in from the clustered review store when they're asked for and keeps them in an
+// LRU cache bounded by an estimated heap size, so only the recently used businesses' reviews are in memory.
+public class ReviewCache implements Closeable {
+    // Rough heap size of a Review with its short strings, and of the map entry and list per business
+    private static final long REVIEW_OVERHEAD_BYTES = 240;
+    private static final long ENTRY_OVERHEAD_BYTES = 120;
+
+    private final ClusteredReviewStore store;
+    private final long maxBytes;
+    private final LinkedHashMap<String, List<Review>> entries = new LinkedHashMap<>(16, 0.75f, true);
+    private final Map<String, Long> entryBytes = new HashMap<>();
+    private long currentBytes;
+    private long hits;
+    private long misses;
+    private long evictions;
+
+    // Constructor, maxBytes is the budget for the cached reviews
+    public ReviewCache(ClusteredReviewStore store, long maxBytes) {
+        this.store = store;
+        this.maxBytes = maxBytes;
+    }
+
+    // Returns the reviews for a business, or an empty list if it has none, reading them from disk on a miss
+    public List<Review> getReviews(String businessId) {
+        synchronized (this) {
+            List<Review> cached = entries.get(businessId);
+            if (cached != null) {
+                hits++;
+                return cached;
+            }
+            misses++;
+        }
+        // Read outside the lock so a slow read doesn't hold up hits, two threads may both read the same business
+        List<Review> reviews = Collections.unmodifiableList(store.getReviews(businessId));
+        put(businessId, reviews);
+        return reviews;
+    }
+
+    // Stores a business's reviews, evicting the least recently used businesses until the budget holds again
+    private synchronized void put(String businessId, List<Review> reviews) {
+        long bytes = estimateBytes(businessId, reviews);
+        // A business bigger than the whole budget is handed out but not kept
+        if (bytes > maxBytes) {
+            return;
+        }
+        if (entries.put(businessId, reviews) != null) {
+            currentBytes -= entryBytes.get(businessId);
+        }
+        entryBytes.put(businessId, bytes);
+        currentBytes += bytes;
+
+        Iterator<Map.Entry<String, List<Review>>> eldest = entries.entrySet().iterator();
+        while (currentBytes > maxBytes && eldest.hasNext()) {
+            String evicted = eldest.next().getKey();
+            currentBytes -= entryBytes.remove(evicted);
+            eldest.remove();
+            evictions++;
+        }
+    }
+
+    // Drops every cached business
+    public synchronized void invalidate() {
+        entries.clear();
+        entryBytes.clear();
+        currentBytes = 0;
+    }
+
+    // Heap taken by the reviews plus the whole block their text points into, which is allocated at its full size
+    // (off heap when it isn't compressed) no matter how much of it is text
+    private long estimateBytes(String businessId, List<Review> reviews) {
+        long bytes = ENTRY_OVERHEAD_BYTES + 2L * businessId.length() + store.getBlockBytes(businessId);
+        for (Review review : reviews) {
+            bytes += REVIEW_OVERHEAD_BYTES + 2L * (length(review.getReview_id()) + length(review.getUser_id())
+                    + length(review.getBusiness_id()) + length(review.getDate()));
+            if (!review.hasArenaText()) {
+                bytes += 2L * length(review.getText());
+            }
+        }
+        return bytes;
+    }
+
+    private static int length(String value) {
+        return value == null ? 0 : value.length();
+    }
+
+    // Returns the number of businesses that have at least one review
+    public int getBusinessCount() {
+        return store.getBusinessCount();
+    }
+
+    // Returns the number of reviews of a business without reading them, whether or not they're cached
+    public int getReviewCount(String businessId) {
+        return store.getReviewCount(businessId);
+    }
+
+    // Returns the total number of reviews on disk
+    public int getReviewCount() {
+        return store.getReviewCount();
+    }
+
+    public boolean isEmpty() {
+        return store.isEmpty();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized long getEvictions() {
+        return evictions;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getEstimatedBytes() {
+        return currentBytes;
+    }
+
+    public long getMaxBytes() {
+        return maxBytes;
+    }
+
+    @Override
+    public void close() throws IOException {
+        store.close();
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "ReviewCache[businesses=" + entries.size() + ", bytes=" + currentBytes + "/" + maxBytes + ", hits=" + hits
+                + ", misses=" + misses + ", evictions=" + evictions + "]";
+    }
+}
@@ -0,0 +1,43 @@
+package main.java.loader;
+
+import main.java.model.Review;
+
+import java.util.*;
+
+// Immutable index from business ID to the reviews written for that business, built once at load time
+public class ReviewIndex {
+    private final Map<String, List<Review>> reviewsByBusiness;
+    private final int reviewCount;
+
+    // Constructor, groups the reviews by business ID in a single pass
+    public ReviewIndex(List<Review> reviews) {
+        Map<String, List<Review>> grouped = new HashMap<>();
+        for (Review review : reviews) {
+            grouped.computeIfAbsent(review.getBusiness_id(), k -> new ArrayList<>()).add(review);
+        }
+        // Freeze each group so the index can be shared safely
+        Map<String, List<Review>> frozen = new HashMap<>(grouped.size() * 2);
+        grouped.forEach((businessId, group) -> frozen.put(businessId, Collections.unmodifiableList(group)));
+        this.reviewsByBusiness = Collections.unmodifiableMap(frozen);
+        this.reviewCount = reviews.size();
+    }
+
+    // Returns the reviews for a business, or an empty list if it has none
+    public List<Review> getReviews(String businessId) {
+        return reviewsByBusiness.getOrDefault(businessId, Collections.emptyList());
+    }
+
+    // Returns the number of businesses that have at least one review
+    public int getBusinessCount() {
+        return reviewsByBusiness.size();
+    }
+
+    // Returns the total number of indexed reviews
+    public int getReviewCount() {
+        return reviewCount;
+    }
+
+    public boolean isEmpty() {
+        return reviewCount == 0;
+    }
+}
@@ -4,6 +4,7 @@ import java.io.IOException;
 import java.io.ObjectInputStream;
 import java.io.Serial;
 import java.util.*;
+import java.util.function.Consumer;
 import java.util.stream.Collectors;
 import java.io.Serializable;
 
@@ -27,6 +28,8 @@ public class Business implements Serializable {
     private String categories;
     private Map<String, String> hours;
     private String phoneNumber;
+    // Fills in the neighbours the first time they're asked for, set on businesses built from the snapshot
+    private transient volatile Consumer<Business> neighborLoader;
 
     // Constructor
     public Business(String business_id, String name, String address, String city, String state,
@@ -188,9 +191,25 @@ public class Business implements Serializable {
     }
 
     public Map<Business, Double> getNeighbors() {
+        if (neighborLoader != null) {
+            loadNeighbors();
+        }
         return this.neighbors;
     }
 
+    // Sets where the neighbours come from, they're only looked up once getNeighbors is called
+    public void setNeighborLoader(Consumer<Business> neighborLoader) {
+        this.neighborLoader = neighborLoader;
+    }
+
+    private synchronized void loadNeighbors() {
+        Consumer<Business> loader = neighborLoader;
+        if (loader != null) {
+            loader.accept(this);
+            neighborLoader = null;
+        }
+    }
+
     private void readObject(ObjectInputStream ois) throws IOException, ClassNotFoundException {
         ois.defaultReadObject();
         if (neighbors == null) {
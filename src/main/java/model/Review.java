@@ -1,5 +1,7 @@
 package main.java.model;
 
+import java.io.IOException;
+import java.io.ObjectOutputStream;
 import java.io.Serializable;
 
 public class Review implements Serializable {
@@ -13,6 +15,10 @@ public class Review implements Serializable {
     private int useful;
     private int funny;
     private int cool;
+    // When the text is kept off heap it's only a position in the arena, and text is null
+    private transient TextArena textArena;
+    private transient int textOffset;
+    private transient int textLength;
 
     // Contructor
     public Review(String review_id, String user_id, String business_id, int stars, String date, String text, int useful, int funny, int cool) {
@@ -27,6 +33,14 @@ public class Review implements Serializable {
         this.cool = cool;
     }
 
+    // Constructor for a review whose text is kept in an arena as UTF-8
+    public Review(String review_id, String user_id, String business_id, int stars, String date, TextArena textArena, int textOffset, int textLength, int useful, int funny, int cool) {
+        this(review_id, user_id, business_id, stars, date, (String) null, useful, funny, cool);
+        this.textArena = textArena;
+        this.textOffset = textOffset;
+        this.textLength = textLength;
+    }
+
     // Setters and getters:
 
     public String getReview_id() {
@@ -69,12 +83,36 @@ public class Review implements Serializable {
         this.date = date;
     }
 
+    // Decodes the text from the arena on every call when it's kept off heap, tokenizers should read the bytes instead
     public String getText() {
+        if (textArena != null) {
+            return textArena.decode(textOffset, textLength);
+        }
         return text;
     }
 
     public void setText(String text) {
         this.text = text;
+        this.textArena = null;
+    }
+
+    // Returns true if the text is kept in an arena, see getTextArena, getTextOffset and getTextLength
+    public boolean hasArenaText() {
+        return textArena != null;
+    }
+
+    public TextArena getTextArena() {
+        return textArena;
+    }
+
+    // Offset of the text in the arena's buffer
+    public int getTextOffset() {
+        return textOffset;
+    }
+
+    // Length of the text in UTF-8 bytes when it's kept in an arena
+    public int getTextLength() {
+        return textLength;
     }
 
     public int getUseful() {
@@ -100,4 +138,20 @@ public class Review implements Serializable {
     public void setCool(int cool) {
         this.cool = cool;
     }
+
+    // The arena can't be serialized, so arena text is written out as a normal String. The fields are written one
+    // by one instead of with defaultWriteObject, which keeps the stream format and leaves this review as it is.
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("review_id", review_id);
+        fields.put("user_id", user_id);
+        fields.put("business_id", business_id);
+        fields.put("stars", stars);
+        fields.put("date", date);
+        fields.put("text", getText());
+        fields.put("useful", useful);
+        fields.put("funny", funny);
+        fields.put("cool", cool);
+        out.writeFields();
+    }
 }
\ No newline at end of file
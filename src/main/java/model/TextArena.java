@@ -0,0 +1,32 @@
+package main.java.model;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+// Off-heap view of UTF-8 review text: a block of encoded records read from disk into a direct ByteBuffer, so the
+// text doesn't add to old-gen size or get copied around by the GC, and a Review only keeps an offset and a length.
+// The memory is released once the arena itself is garbage collected.
+public final class TextArena {
+    private final ByteBuffer buffer;
+
+    private TextArena(ByteBuffer buffer) {
+        this.buffer = buffer;
+    }
+
+    // Arena over bytes that are already in a buffer
+    public static TextArena wrap(ByteBuffer buffer) {
+        return new TextArena(buffer);
+    }
+
+    // Decodes text back into a String
+    public String decode(int offset, int length) {
+        byte[] bytes = new byte[length];
+        buffer.get(offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // Returns the buffer that holds the text, only read it with absolute gets
+    public ByteBuffer buffer() {
+        return buffer;
+    }
+}
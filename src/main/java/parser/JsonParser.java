@@ -1,52 +1,110 @@
 package main.java.parser;
 
 import com.google.gson.Gson;
+import com.google.gson.Strictness;
 import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
 import main.java.model.*;
 
-import java.io.FileReader;
 import java.io.IOException;
 import java.io.Reader;
-import java.util.ArrayList;
-import java.util.Arrays;
+import java.io.UncheckedIOException;
+import java.util.Iterator;
 import java.util.List;
-import java.io.BufferedReader;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class JsonParser {
     private final Gson gson = new Gson(); // Create a Gson instance
-    private final int MAX_RECORDS = 10000;
+
+    // Stream the businesses one record at a time, closing the stream closes the reader
+    public Stream<Business> streamBusinesses(Reader reader) {
+        return streamBusinesses(reader, RecordDecoder.ALL_BUSINESS_FIELDS);
+    }
+
+    // Stream the businesses reading only the given fields, the rest are skipped without being decoded
+    public Stream<Business> streamBusinesses(Reader reader, Set<String> fields) {
+        return stream(reader, RecordDecoder.businesses(fields));
+    }
+
+    // Stream the reviews one record at a time, closing the stream closes the reader
+    public Stream<Review> streamReviews(Reader reader) {
+        return streamReviews(reader, RecordDecoder.ALL_REVIEW_FIELDS);
+    }
+
+    // Stream the reviews reading only the given fields, e.g. RecordDecoder.SIMILARITY_REVIEW_FIELDS
+    public Stream<Review> streamReviews(Reader reader, Set<String> fields) {
+        return stream(reader, RecordDecoder.reviews(fields));
+    }
+
+    // Stream any record type, letting Gson map every field onto the class
+    public <T> Stream<T> stream(Reader reader, Class<T> type) {
+        return stream(reader, RecordDecoder.of(gson, type));
+    }
 
     // Parse the businesses
     public List<Business> parseBusinesses(Reader reader) throws JsonParseException {
-        List<Business> businessList = new ArrayList<>();
-        try (BufferedReader bufferedReader = new BufferedReader(reader)) {
-            String line;
-            // Read each line of JSON data until either hit end of file or the maximum record limit is met
-            while ((line = bufferedReader.readLine()) != null && businessList.size() < MAX_RECORDS) {
-                Business business = gson.fromJson(line, Business.class); // Convert the JSON line to a Business object
-                businessList.add(business);// Add the parsed business object to the list
-            }
-        } catch (IOException e) {
+        try (Stream<Business> businesses = streamBusinesses(reader)) {
+            return businesses.collect(Collectors.toList());
+        } catch (UncheckedIOException | com.google.gson.JsonParseException e) {
             // Throw JsonParseException if an IO error occurs during reading or parsing.
             throw new JsonParseException("Failed to parse businesses from JSON", e);
         }
-        return businessList;
     }
 
     //Parse the reviews
     public List<Review> parseReviews(Reader reader) throws JsonParseException {
-        List<Review> reviewList = new ArrayList<>();
-        try (BufferedReader bufferedReader = new BufferedReader(reader)) {
-            String line;
-            // Read each line of JSON data until either hit end of file or the maximum record limit is met
-            while ((line = bufferedReader.readLine()) != null && reviewList.size() < MAX_RECORDS) {
-                Review review = gson.fromJson(line, Review.class); // Convert the JSON line to a Review object
-                reviewList.add(review); // Add the parsed review object to the list
-            }
-        } catch (IOException e) {
+        try (Stream<Review> reviews = streamReviews(reader)) {
+            return reviews.collect(Collectors.toList());
+        } catch (UncheckedIOException | com.google.gson.JsonParseException e) {
             // Throw JsonParseException if an IO error occurs during reading or parsing.
             throw new JsonParseException("Failed to parse reviews from JSON", e);
         }
-        return reviewList;
     }
-}
\ No newline at end of file
+
+    // Decodes newline-delimited JSON objects straight from the token stream, holding only the current record in memory.
+    // IO errors surface as UncheckedIOException and malformed records as Gson's JsonParseException.
+    <T> Stream<T> stream(Reader reader, RecordDecoder<T> decoder) {
+        JsonReader jsonReader = new JsonReader(reader);
+        // Lenient mode lets the reader accept one top-level object after another
+        jsonReader.setStrictness(Strictness.LENIENT);
+        Iterator<T> iterator = new Iterator<>() {
+            @Override
+            public boolean hasNext() {
+                try {
+                    return jsonReader.peek() != JsonToken.END_DOCUMENT;
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                }
+            }
+
+            @Override
+            public T next() {
+                if (!hasNext()) {
+                    throw new NoSuchElementException();
+                }
+                try {
+                    return decoder.read(jsonReader); // Convert the next JSON object to a record
+                } catch (IOException e) {
+                    throw new UncheckedIOException(e);
+                } catch (IllegalStateException | NumberFormatException e) {
+                    // A value of the wrong type, reported the same way Gson reports it
+                    throw new com.google.gson.JsonSyntaxException(e);
+                }
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(iterator, Spliterator.ORDERED | Spliterator.NONNULL), false)
+                .onClose(() -> {
+                    try {
+                        jsonReader.close();
+                    } catch (IOException e) {
+                        throw new UncheckedIOException(e);
+                    }
+                });
+    }
+}
@@ -0,0 +1,172 @@
+package main.java.parser;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.BiConsumer;
+import java.util.function.Supplier;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
+
+// Reads a newline-delimited JSON file on several cores. The file is memory-mapped and cut into byte
+// ranges that start and end on a newline, and each range is decoded by its own worker into its own
+// accumulator. Accumulators come back in file order, so results can be merged in order afterwards.
+public class ParallelNdjsonReader {
+    // A single mapping can't exceed 2GB, ranges are kept well below that
+    private static final long MAX_RANGE_BYTES = 1L << 30;
+    private static final int SCAN_BUFFER_BYTES = 64 * 1024;
+
+    private final Path file;
+    private final int workers;
+    private final JsonParser jsonParser = new JsonParser();
+
+    // Constructor
+    public ParallelNdjsonReader(Path file, int workers) {
+        this.file = file;
+        this.workers = Math.max(1, workers);
+    }
+
+    // Constructor using one worker per available core
+    public ParallelNdjsonReader(Path file) {
+        this(file, Runtime.getRuntime().availableProcessors());
+    }
+
+    // Decodes every record, handing each to the accumulator of the worker that decoded it.
+    // Returns the accumulators in file order.
+    public <T, A> List<A> read(RecordDecoder<T> decoder, Supplier<A> newAccumulator, BiConsumer<A, T> consumer) throws IOException {
+        long[] boundaries;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            boundaries = splitOnNewlines(channel);
+        }
+        return readRanges(Arrays.copyOf(boundaries, boundaries.length - 1), Arrays.copyOfRange(boundaries, 1, boundaries.length),
+                decoder, newAccumulator, consumer);
+    }
+
+    // Decodes the given byte ranges in parallel, one accumulator per range, returned in range order.
+    // Every range must start at the beginning of a line and end just after a newline or at the end of the file.
+    public <T, A> List<A> readRanges(long[] starts, long[] ends, RecordDecoder<T> decoder, Supplier<A> newAccumulator, BiConsumer<A, T> consumer) throws IOException {
+        long startTime = System.nanoTime();
+        long bytes = 0;
+        for (int range = 0; range < starts.length; range++) {
+            bytes += ends[range] - starts[range];
+        }
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            List<A> accumulators;
+            try {
+                accumulators = IntStream.range(0, starts.length)
+                        .parallel()
+                        .mapToObj(range -> {
+                            A accumulator = newAccumulator.get();
+                            try {
+                                decodeRange(channel, starts[range], ends[range], decoder, accumulator, consumer);
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                            return accumulator;
+                        })
+                        .collect(Collectors.toList());
+            } catch (UncheckedIOException e) {
+                throw e.getCause();
+            }
+            double seconds = (System.nanoTime() - startTime) / 1_000_000_000.0;
+            System.out.println("Read " + file.getFileName() + " in " + starts.length + " ranges on " + workers
+                    + " workers at " + String.format("%.1f", bytes / (1024.0 * 1024.0) / seconds) + " MB/s.");
+            return accumulators;
+        }
+    }
+
+    // Decodes every record and returns them in file order
+    public <T> List<T> readInOrder(RecordDecoder<T> decoder) throws IOException {
+        List<List<T>> ranges = read(decoder, ArrayList::new, List::add);
+        List<T> records = new ArrayList<>();
+        ranges.forEach(records::addAll);
+        return records;
+    }
+
+    // Cuts the file into about one range per worker, moving every cut forward to just after the next newline
+    private long[] splitOnNewlines(FileChannel channel) throws IOException {
+        long size = channel.size();
+        int rangeCount = (int) Math.max(workers, (size + MAX_RANGE_BYTES - 1) / MAX_RANGE_BYTES);
+        List<Long> boundaries = new ArrayList<>();
+        boundaries.add(0L);
+        for (int i = 1; i < rangeCount; i++) {
+            long cut = nextLineStart(channel, size * i / rangeCount);
+            if (cut > boundaries.get(boundaries.size() - 1) && cut < size) {
+                boundaries.add(cut);
+            }
+        }
+        boundaries.add(size);
+        return boundaries.stream().mapToLong(Long::longValue).toArray();
+    }
+
+    // Returns the position just after the first newline at or after position, or the file size if there is none
+    private static long nextLineStart(FileChannel channel, long position) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(SCAN_BUFFER_BYTES);
+        long offset = position;
+        while (true) {
+            buffer.clear();
+            int read = channel.read(buffer, offset);
+            if (read <= 0) {
+                return channel.size();
+            }
+            for (int i = 0; i < read; i++) {
+                if (buffer.get(i) == '\n') {
+                    return offset + i + 1;
+                }
+            }
+            offset += read;
+        }
+    }
+
+    // Maps one range and streams its records through the same token-level decoder as JsonParser
+    private <T, A> void decodeRange(FileChannel channel, long start, long end, RecordDecoder<T> decoder, A accumulator, BiConsumer<A, T> consumer) throws IOException {
+        if (end <= start) {
+            return;
+        }
+        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, start, end - start);
+        // The cuts are on newlines, so no UTF-8 sequence is ever split between two ranges
+        try (Stream<T> records = jsonParser.stream(new InputStreamReader(new ByteBufferInputStream(mapped), StandardCharsets.UTF_8), decoder)) {
+            records.forEach(record -> consumer.accept(accumulator, record));
+        }
+    }
+
+    // InputStream view of a ByteBuffer, so a mapped range can feed a Reader without copying it to the heap first
+    private static final class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int count = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
+}
@@ -0,0 +1,144 @@
+package main.java.parser;
+
+import com.google.gson.Gson;
+import com.google.gson.stream.JsonReader;
+import com.google.gson.stream.JsonToken;
+import main.java.model.Business;
+import main.java.model.Review;
+
+import java.io.IOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+// Decodes one JSON record from the token stream. The review and business decoders take a projection,
+// the set of JSON fields the caller actually needs: those are read, every other value is skipped by
+// JsonReader.skipValue without building a String or number for it. Fields left out keep their default (null or 0).
+public interface RecordDecoder<T> {
+    // Review fields read by the similarity path
+    Set<String> SIMILARITY_REVIEW_FIELDS = Set.of("business_id", "text");
+    // Review fields kept when reviews are ingested and stored
+    Set<String> STORED_REVIEW_FIELDS = Set.of("review_id", "business_id", "text");
+    Set<String> ALL_REVIEW_FIELDS = Set.of("review_id", "user_id", "business_id", "stars", "date", "text", "useful", "funny", "cool");
+    Set<String> ALL_BUSINESS_FIELDS = Set.of("business_id", "name", "address", "city", "state", "postal_code", "latitude",
+            "longitude", "stars", "review_count", "is_open", "attributes", "categories", "hours", "phoneNumber");
+
+    T read(JsonReader reader) throws IOException;
+
+    // Decoder that lets Gson map the whole record onto the class
+    static <T> RecordDecoder<T> of(Gson gson, Class<T> type) {
+        return reader -> gson.fromJson(reader, type);
+    }
+
+    // Review decoder reading only the given fields
+    static RecordDecoder<Review> reviews(Set<String> fields) {
+        return reader -> readReview(reader, fields);
+    }
+
+    // Business decoder reading only the given fields
+    static RecordDecoder<Business> businesses(Set<String> fields) {
+        return reader -> readBusiness(reader, fields);
+    }
+
+    private static Review readReview(JsonReader reader, Set<String> fields) throws IOException {
+        String reviewId = null, userId = null, businessId = null, date = null, text = null;
+        int stars = 0, useful = 0, funny = 0, cool = 0;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String name = reader.nextName();
+            if (!fields.contains(name) || reader.peek() == JsonToken.NULL) {
+                reader.skipValue();
+                continue;
+            }
+            switch (name) {
+                case "review_id" -> reviewId = reader.nextString();
+                case "user_id" -> userId = reader.nextString();
+                case "business_id" -> businessId = reader.nextString();
+                case "stars" -> stars = (int) reader.nextDouble(); // Some dumps write stars as 4.0
+                case "date" -> date = reader.nextString();
+                case "text" -> text = reader.nextString();
+                case "useful" -> useful = reader.nextInt();
+                case "funny" -> funny = reader.nextInt();
+                case "cool" -> cool = reader.nextInt();
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new Review(reviewId, userId, businessId, stars, date, text, useful, funny, cool);
+    }
+
+    private static Business readBusiness(JsonReader reader, Set<String> fields) throws IOException {
+        String businessId = null, name = null, address = null, city = null, state = null, postalCode = null, categories = null, phoneNumber = null;
+        double latitude = 0, longitude = 0;
+        float stars = 0;
+        int reviewCount = 0, isOpen = 0;
+        Map<String, Boolean> attributes = null;
+        Map<String, String> hours = null;
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String field = reader.nextName();
+            if (!fields.contains(field) || reader.peek() == JsonToken.NULL) {
+                reader.skipValue();
+                continue;
+            }
+            switch (field) {
+                case "business_id" -> businessId = reader.nextString();
+                case "name" -> name = reader.nextString();
+                case "address" -> address = reader.nextString();
+                case "city" -> city = reader.nextString();
+                case "state" -> state = reader.nextString();
+                case "postal_code" -> postalCode = reader.nextString();
+                case "latitude" -> latitude = reader.nextDouble();
+                case "longitude" -> longitude = reader.nextDouble();
+                case "stars" -> stars = (float) reader.nextDouble();
+                case "review_count" -> reviewCount = reader.nextInt();
+                case "is_open" -> isOpen = reader.nextInt();
+                case "attributes" -> attributes = readAttributes(reader);
+                case "categories" -> categories = reader.nextString();
+                case "hours" -> hours = readHours(reader);
+                case "phoneNumber" -> phoneNumber = reader.nextString();
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return new Business(businessId, name, address, city, state, postalCode, latitude, longitude, stars, reviewCount,
+                isOpen, attributes, categories, hours, phoneNumber);
+    }
+
+    // Attribute values are booleans or strings like "True", the same as Gson maps them to Boolean.
+    // Nested values (e.g. BusinessParking) aren't booleans at all and are left out.
+    private static Map<String, Boolean> readAttributes(JsonReader reader) throws IOException {
+        Map<String, Boolean> attributes = new HashMap<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String key = reader.nextName();
+            switch (reader.peek()) {
+                case BOOLEAN -> attributes.put(key, reader.nextBoolean());
+                case STRING -> attributes.put(key, Boolean.parseBoolean(reader.nextString()));
+                case NULL -> {
+                    reader.nextNull();
+                    attributes.put(key, null);
+                }
+                default -> reader.skipValue();
+            }
+        }
+        reader.endObject();
+        return attributes;
+    }
+
+    private static Map<String, String> readHours(JsonReader reader) throws IOException {
+        Map<String, String> hours = new HashMap<>();
+        reader.beginObject();
+        while (reader.hasNext()) {
+            String day = reader.nextName();
+            if (reader.peek() == JsonToken.NULL) {
+                reader.nextNull();
+                hours.put(day, null);
+            } else {
+                hours.put(day, reader.nextString());
+            }
+        }
+        reader.endObject();
+        return hours;
+    }
+}
@@ -0,0 +1,70 @@
+package main.java.service;
+
+import java.util.Arrays;
+
+// Hash table counting how often each term occurs and in how many documents.
+// Term IDs are looked up in an IncrementalHashMap that gives each term a row in the count arrays, so the table
+// grows with the number of distinct terms instead of walking longer and longer chains.
+// A new table is made for every business, so concurrent callers never share one.
+class FrequencyTable {
+    private static final int INITIAL_TERMS = 16;
+
+    private final IncrementalHashMap rows = new IncrementalHashMap(INITIAL_TERMS * 2, IncrementalHashMap.DEFAULT_LOAD_FACTOR);
+    private int[] termIds = new int[INITIAL_TERMS];
+    private int[] termCounts = new int[INITIAL_TERMS];
+    private int[] documentCounts = new int[INITIAL_TERMS];
+    // Documents are counted in order, so remembering the last one is enough to count each document once
+    private int[] lastDocuments = new int[INITIAL_TERMS];
+    private int termCount;
+
+    // Updates the frequency count for a term or adds the term if it isnt in the table yet
+    void addOrUpdateFrequency(int termId, int documentIndex) {
+        int row = findOrCreateRow(termId);
+        termCounts[row]++;
+        if (lastDocuments[row] != documentIndex) {
+            lastDocuments[row] = documentIndex;
+            documentCounts[row]++;
+        }
+    }
+
+    // Adds counts gathered elsewhere for a term, used to fold the table of another worker into this one
+    void addCounts(int termId, int termCount, int documentCount) {
+        int row = findOrCreateRow(termId);
+        termCounts[row] += termCount;
+        documentCounts[row] += documentCount;
+    }
+
+    // Finds the row of a term or adds one if not found
+    private int findOrCreateRow(int termId) {
+        int row = rows.get(termId, -1);
+        if (row >= 0) {
+            return row;
+        }
+        if (termCount == termIds.length) {
+            int grown = termCount * 2;
+            termIds = Arrays.copyOf(termIds, grown);
+            termCounts = Arrays.copyOf(termCounts, grown);
+            documentCounts = Arrays.copyOf(documentCounts, grown);
+            lastDocuments = Arrays.copyOf(lastDocuments, grown);
+        }
+        row = termCount++;
+        termIds[row] = termId;
+        termCounts[row] = 0;
+        documentCounts[row] = 0;
+        lastDocuments[row] = -1;
+        rows.put(termId, row);
+        return row;
+    }
+
+    // Returns the number of distinct terms
+    int size() {
+        return termCount;
+    }
+
+    // Passes every term with its total count and the number of documents it appears in to the visitor
+    void forEach(SimilarityCalculator.TermFrequencyVisitor visitor) {
+        for (int row = 0; row < termCount; row++) {
+            visitor.visit(termIds[row], termCounts[row], documentCounts[row]);
+        }
+    }
+}
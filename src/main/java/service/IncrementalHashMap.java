@@ -0,0 +1,188 @@
+package main.java.service;
+
+// Open-addressing hash map from long keys to int values, kept in primitive arrays so there is no object per entry.
+// Slots are probed linearly from a mixed hash of the key. Once the table is fuller than the load factor a table
+// twice the size is allocated, but the entries are moved over a few slots at a time on the following puts instead
+// of all at once, so no single put pays for rehashing the whole table. While a resize is running, lookups check
+// the new table first and then the part of the old one that hasn't been moved yet. Entries can't be removed.
+// Not thread-safe.
+public class IncrementalHashMap {
+    // Old slots moved to the new table on every put during a resize. The old table is at most 3/4 full and the new
+    // one is twice the size, so 4 per put finishes the move long before the new table reaches its own limit.
+    private static final int MIGRATE_PER_PUT = 4;
+    public static final float DEFAULT_LOAD_FACTOR = 0.75f;
+
+    private final float loadFactor;
+    private long[] keys;
+    private int[] values;
+    private boolean[] used;
+    private int size;
+    private int resizeAt;
+
+    // Old table while a resize is running, null otherwise. Slots below migrated have been copied to the new table
+    // already, they're left in place so probe chains through them still work.
+    private long[] oldKeys;
+    private int[] oldValues;
+    private boolean[] oldUsed;
+    private int migrated;
+
+    // Constructor
+    public IncrementalHashMap() {
+        this(16, DEFAULT_LOAD_FACTOR);
+    }
+
+    // Constructor, the capacity is rounded up to a power of two
+    public IncrementalHashMap(int initialCapacity, float loadFactor) {
+        if (!(loadFactor > 0 && loadFactor <= 0.75f)) {
+            throw new IllegalArgumentException("Load factor must be above 0 and at most 0.75: " + loadFactor);
+        }
+        this.loadFactor = loadFactor;
+        allocate(Integer.highestOneBit(Math.max(4, initialCapacity - 1)) << 1);
+    }
+
+    // Returns the value for a key, or missingValue if the key isn't in the map
+    public int get(long key, int missingValue) {
+        int slot = find(keys, used, key);
+        if (slot >= 0) {
+            return values[slot];
+        }
+        if (oldKeys != null) {
+            slot = find(oldKeys, oldUsed, key);
+            // A moved slot would have been found in the new table
+            if (slot >= migrated) {
+                return oldValues[slot];
+            }
+        }
+        return missingValue;
+    }
+
+    public boolean containsKey(long key) {
+        return find(keys, used, key) >= 0 || (oldKeys != null && find(oldKeys, oldUsed, key) >= migrated);
+    }
+
+    // Sets the value for a key
+    public void put(long key, int value) {
+        migrateSome();
+        int slot = slotFor(keys, used, key);
+        if (used[slot]) {
+            values[slot] = value;
+            return;
+        }
+        // A key still waiting in the old table is updated there and moves over with its new value
+        if (oldKeys != null) {
+            int oldSlot = find(oldKeys, oldUsed, key);
+            if (oldSlot >= migrated) {
+                oldValues[oldSlot] = value;
+                return;
+            }
+        }
+        used[slot] = true;
+        keys[slot] = key;
+        values[slot] = value;
+        size++;
+        if (size >= resizeAt && oldKeys == null) {
+            startResize();
+        }
+    }
+
+    // Returns the number of keys
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    // Returns the number of slots in the current table
+    public int capacity() {
+        return keys.length;
+    }
+
+    public boolean isResizing() {
+        return oldKeys != null;
+    }
+
+    // Receives the entries of the map
+    public interface EntryVisitor {
+        void visit(long key, int value);
+    }
+
+    // Passes every entry to the visitor, in no particular order
+    public void forEach(EntryVisitor visitor) {
+        if (oldKeys != null) {
+            for (int slot = migrated; slot < oldKeys.length; slot++) {
+                if (oldUsed[slot]) {
+                    visitor.visit(oldKeys[slot], oldValues[slot]);
+                }
+            }
+        }
+        for (int slot = 0; slot < keys.length; slot++) {
+            if (used[slot]) {
+                visitor.visit(keys[slot], values[slot]);
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new long[capacity];
+        values = new int[capacity];
+        used = new boolean[capacity];
+        resizeAt = (int) (capacity * loadFactor);
+    }
+
+    private void startResize() {
+        oldKeys = keys;
+        oldValues = values;
+        oldUsed = used;
+        migrated = 0;
+        allocate(keys.length * 2);
+    }
+
+    // Copies the next few old slots into the new table, and drops the old table once they're all copied
+    private void migrateSome() {
+        if (oldKeys == null) {
+            return;
+        }
+        int end = Math.min(oldKeys.length, migrated + MIGRATE_PER_PUT);
+        for (int slot = migrated; slot < end; slot++) {
+            if (oldUsed[slot]) {
+                int newSlot = slotFor(keys, used, oldKeys[slot]);
+                used[newSlot] = true;
+                keys[newSlot] = oldKeys[slot];
+                values[newSlot] = oldValues[slot];
+            }
+        }
+        migrated = end;
+        if (migrated == oldKeys.length) {
+            oldKeys = null;
+            oldValues = null;
+            oldUsed = null;
+            if (size >= resizeAt) {
+                startResize();
+            }
+        }
+    }
+
+    // Returns the slot holding the key, or -1
+    private static int find(long[] keys, boolean[] used, long key) {
+        int slot = slotFor(keys, used, key);
+        return used[slot] ? slot : -1;
+    }
+
+    // Returns the slot holding the key, or the empty slot where it would go
+    private static int slotFor(long[] keys, boolean[] used, long key) {
+        int mask = keys.length - 1;
+        int slot = mix(key) & mask;
+        while (used[slot] && keys[slot] != key) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    // Spreads the key's bits so sequential keys like term IDs don't land in neighbouring slots
+    private static int mix(long key) {
+        long h = key * 0x9E3779B97F4A7C15L;
+        return (int) (h ^ (h >>> 32));
+    }
+}
@@ -0,0 +1,320 @@
+package main.java.service;
+
+import main.java.model.Business;
+
+import java.util.*;
+
+// Inverted index from term ID to the businesses whose TF-IDF vector contains that term.
+// Used to score only the businesses that can still make the top k instead of the whole catalog.
+public class InvertedIndex {
+    private final List<Business> businesses;
+    private final Map<String, Integer> ordinals;
+    private final SparseVector[] vectors;
+    private final List<List<String>> categories;
+    // Postings per term: business ordinals and the weight of the term in each (normalized) business vector
+    private final int[][] postingBusinesses;
+    private final float[][] postingWeights;
+    private final float[] maxWeights;
+    // Postings per category: ordinals of the businesses listing that category
+    private final Map<String, int[]> categoryPostings;
+    // Per-thread scratch space so a query only touches the entries of the businesses it scores
+    private final ThreadLocal<double[]> dotScratch;
+    private final ThreadLocal<boolean[]> seenScratch;
+    private final ThreadLocal<double[]> categoryScratch;
+    private final ThreadLocal<ThresholdHeap> thresholdScratch;
+
+    // Constructor, builds the postings from the precomputed vectors of the given businesses
+    public InvertedIndex(List<Business> businesses, TfIdfVectorStore vectorStore) {
+        int businessCount = businesses.size();
+        int termCount = vectorStore.getDictionary().size();
+        this.businesses = businesses;
+        this.ordinals = new HashMap<>(businessCount * 2);
+        this.vectors = new SparseVector[businessCount];
+        this.categories = new ArrayList<>(businessCount);
+
+        // Count the postings of each term so every list can be allocated at its final size
+        int[] postingCounts = new int[termCount];
+        Map<String, Integer> categoryCounts = new HashMap<>();
+        for (int ordinal = 0; ordinal < businessCount; ordinal++) {
+            Business business = businesses.get(ordinal);
+            ordinals.put(business.getBusiness_id(), ordinal);
+            vectors[ordinal] = vectorStore.getVector(business.getBusiness_id());
+            categories.add(business.getCategoriesList());
+            for (int i = 0; i < vectors[ordinal].size(); i++) {
+                postingCounts[vectors[ordinal].getTermId(i)]++;
+            }
+            for (String category : categories.get(ordinal)) {
+                categoryCounts.merge(category, 1, Integer::sum);
+            }
+        }
+
+        this.postingBusinesses = new int[termCount][];
+        this.postingWeights = new float[termCount][];
+        this.maxWeights = new float[termCount];
+        for (int termId = 0; termId < termCount; termId++) {
+            postingBusinesses[termId] = new int[postingCounts[termId]];
+            postingWeights[termId] = new float[postingCounts[termId]];
+        }
+        this.categoryPostings = new HashMap<>(categoryCounts.size() * 2);
+        categoryCounts.forEach((category, count) -> categoryPostings.put(category, new int[count]));
+
+        // Fill the postings, storing weights divided by the vector norm so a dot product is the cosine
+        int[] fill = new int[termCount];
+        Map<String, Integer> categoryFill = new HashMap<>();
+        for (int ordinal = 0; ordinal < businessCount; ordinal++) {
+            SparseVector vector = vectors[ordinal];
+            for (int i = 0; i < vector.size(); i++) {
+                int termId = vector.getTermId(i);
+                float weight = (float) (vector.getWeight(i) / vector.getNorm());
+                int slot = fill[termId]++;
+                postingBusinesses[termId][slot] = ordinal;
+                postingWeights[termId][slot] = weight;
+                maxWeights[termId] = Math.max(maxWeights[termId], weight);
+            }
+            for (String category : categories.get(ordinal)) {
+                int slot = categoryFill.merge(category, 1, Integer::sum) - 1;
+                categoryPostings.get(category)[slot] = ordinal;
+            }
+        }
+
+        this.dotScratch = ThreadLocal.withInitial(() -> new double[businessCount]);
+        this.seenScratch = ThreadLocal.withInitial(() -> new boolean[businessCount]);
+        this.categoryScratch = ThreadLocal.withInitial(() -> new double[businessCount]);
+        this.thresholdScratch = ThreadLocal.withInitial(() -> new ThresholdHeap(businessCount));
+        System.out.println("Built inverted index over " + businessCount + " businesses and " + termCount + " terms.");
+    }
+
+    // Returns the k businesses most similar to the target, using max-score pruning.
+    // Terms are visited in order of the most they can still add to a score. Once the text weight
+    // times the remaining bound drops below the current k-th best score, a business that hasn't been
+    // seen yet (and shares no category with the target) can no longer make the top k, so only
+    // businesses already seen keep being scored.
+    public List<Business> findTopSimilar(Business targetBusiness, int k) {
+        return scoreTopSimilar(targetBusiness, k).toSortedList();
+    }
+
+    // Same search as findTopSimilar, but returns the heap so callers can read the scores as well
+    public TopKHeap<Business> scoreTopSimilar(Business targetBusiness, int k) {
+        Integer targetOrdinal = ordinals.get(targetBusiness.getBusiness_id());
+        if (targetOrdinal == null || vectors[targetOrdinal].isEmpty()) {
+            System.out.println("No reviews found for target business: " + targetBusiness.getName());
+            return new TopKHeap<>(0);
+        }
+        SparseVector target = vectors[targetOrdinal];
+        List<String> targetCategories = categories.get(targetOrdinal);
+
+        double[] dot = dotScratch.get();
+        boolean[] seen = seenScratch.get();
+        double[] categoryScores = categoryScratch.get();
+        ThresholdHeap threshold = thresholdScratch.get();
+        threshold.reset(k);
+        int[] touched = new int[16];
+        int touchedCount = 0;
+
+        try {
+            // Businesses sharing a category are always candidates, their category score is a lower bound on their final score
+            seen[targetOrdinal] = true;
+            for (String category : targetCategories) {
+                for (int ordinal : categoryPostings.getOrDefault(category, new int[0])) {
+                    if (!seen[ordinal]) {
+                        seen[ordinal] = true;
+                        if (touchedCount == touched.length) {
+                            touched = Arrays.copyOf(touched, touchedCount * 2);
+                        }
+                        touched[touchedCount++] = ordinal;
+                        categoryScores[ordinal] = SimilarityCalculator.calculateCategorySimilarity(targetCategories, categories.get(ordinal))
+                                * SimilarityCalculator.CATEGORY_WEIGHT;
+                        threshold.update(ordinal, categoryScores[ordinal]);
+                    }
+                }
+            }
+
+            // Order the target's terms by the largest contribution they can make to any cosine
+            int termCount = target.size();
+            Integer[] order = new Integer[termCount];
+            double[] queryWeights = new double[termCount];
+            double[] upperBounds = new double[termCount];
+            for (int i = 0; i < termCount; i++) {
+                order[i] = i;
+                queryWeights[i] = target.getWeight(i) / target.getNorm();
+                upperBounds[i] = queryWeights[i] * maxWeights[target.getTermId(i)];
+            }
+            Arrays.sort(order, (a, b) -> Double.compare(upperBounds[b], upperBounds[a]));
+            double remainingBound = 0.0;
+            for (double upperBound : upperBounds) {
+                remainingBound += upperBound;
+            }
+
+            boolean admitting = true;
+            for (int position = 0; position < termCount; position++) {
+                int i = order[position];
+                if (admitting && SimilarityCalculator.TEXT_WEIGHT * remainingBound < threshold.kthBest()) {
+                    admitting = false;
+                }
+                int termId = target.getTermId(i);
+                int[] postings = postingBusinesses[termId];
+                float[] weights = postingWeights[termId];
+                for (int p = 0; p < postings.length; p++) {
+                    int ordinal = postings[p];
+                    if (ordinal == targetOrdinal) {
+                        continue;
+                    }
+                    if (!seen[ordinal]) {
+                        if (!admitting) {
+                            continue;
+                        }
+                        seen[ordinal] = true;
+                        if (touchedCount == touched.length) {
+                            touched = Arrays.copyOf(touched, touchedCount * 2);
+                        }
+                        touched[touchedCount++] = ordinal;
+                    }
+                    dot[ordinal] += queryWeights[i] * weights[p];
+                    // Scores only go up, so the k-th best lower bound can be kept up to date one candidate at a time
+                    if (admitting) {
+                        threshold.update(ordinal, dot[ordinal] * SimilarityCalculator.TEXT_WEIGHT + categoryScores[ordinal]);
+                    }
+                }
+                remainingBound -= upperBounds[i];
+            }
+
+            // Every candidate's dot product is now its exact cosine, so keep the best final scores
+            TopKHeap<Business> topBusinesses = new TopKHeap<>(k);
+            for (int i = 0; i < touchedCount; i++) {
+                int ordinal = touched[i];
+                topBusinesses.offer(businesses.get(ordinal), dot[ordinal] * SimilarityCalculator.TEXT_WEIGHT + categoryScores[ordinal]);
+            }
+            return topBusinesses;
+        } finally {
+            // Reset only the entries this query touched so the scratch arrays can be reused
+            seen[targetOrdinal] = false;
+            for (int i = 0; i < touchedCount; i++) {
+                seen[touched[i]] = false;
+                dot[touched[i]] = 0.0;
+                categoryScores[touched[i]] = 0.0;
+            }
+            threshold.clear();
+        }
+    }
+
+    // Min-heap of the k candidates with the best lower bounds so far, indexed by ordinal so a candidate whose bound
+    // went up is moved in place. Bounds never go down, so a candidate outside the heap can only get in by beating
+    // the root, and the root is always the k-th best bound of all candidates.
+    private static final class ThresholdHeap {
+        private final int[] ordinals;
+        private final double[] scores;
+        // Heap position + 1 of every ordinal, 0 when it isn't in the heap
+        private final int[] positions;
+        private int capacity;
+        private int size;
+
+        ThresholdHeap(int businessCount) {
+            this.ordinals = new int[businessCount];
+            this.scores = new double[businessCount];
+            this.positions = new int[businessCount];
+        }
+
+        void reset(int k) {
+            this.capacity = Math.min(k, ordinals.length);
+        }
+
+        // Raises the bound of a candidate
+        void update(int ordinal, double score) {
+            int position = positions[ordinal] - 1;
+            if (position >= 0) {
+                scores[position] = score;
+                siftDown(position);
+            } else if (size < capacity) {
+                ordinals[size] = ordinal;
+                scores[size] = score;
+                positions[ordinal] = size + 1;
+                siftUp(size++);
+            } else if (capacity > 0 && score > scores[0]) {
+                positions[ordinals[0]] = 0;
+                ordinals[0] = ordinal;
+                scores[0] = score;
+                positions[ordinal] = 1;
+                siftDown(0);
+            }
+        }
+
+        // Returns the k-th best bound, or 0 while fewer than k candidates have been seen
+        double kthBest() {
+            return size < capacity ? 0.0 : scores[0];
+        }
+
+        // Empties the heap, only the positions of the ordinals in it need resetting
+        void clear() {
+            for (int i = 0; i < size; i++) {
+                positions[ordinals[i]] = 0;
+            }
+            size = 0;
+        }
+
+        private void siftUp(int index) {
+            while (index > 0) {
+                int parent = (index - 1) >>> 1;
+                if (scores[parent] <= scores[index]) {
+                    break;
+                }
+                swap(index, parent);
+                index = parent;
+            }
+        }
+
+        private void siftDown(int index) {
+            while (true) {
+                int smallest = index;
+                int left = 2 * index + 1;
+                int right = left + 1;
+                if (left < size && scores[left] < scores[smallest]) {
+                    smallest = left;
+                }
+                if (right < size && scores[right] < scores[smallest]) {
+                    smallest = right;
+                }
+                if (smallest == index) {
+                    return;
+                }
+                swap(index, smallest);
+                index = smallest;
+            }
+        }
+
+        private void swap(int a, int b) {
+            int ordinal = ordinals[a];
+            ordinals[a] = ordinals[b];
+            ordinals[b] = ordinal;
+            double score = scores[a];
+            scores[a] = scores[b];
+            scores[b] = score;
+            positions[ordinals[a]] = a + 1;
+            positions[ordinals[b]] = b + 1;
+        }
+    }
+
+    // Hash of the businesses (in order), their categories and vectors the index was built over, so results saved
+    // from it can be checked against the current dataset
+    public long fingerprint() {
+        long hash = 0xcbf29ce484222325L;
+        for (int ordinal = 0; ordinal < businesses.size(); ordinal++) {
+            hash = mixHash(hash, businesses.get(ordinal).getBusiness_id().hashCode());
+            hash = mixHash(hash, categories.get(ordinal).hashCode());
+            SparseVector vector = vectors[ordinal];
+            hash = mixHash(hash, vector.size());
+            for (int i = 0; i < vector.size(); i++) {
+                hash = mixHash(hash, vector.getTermId(i));
+                hash = mixHash(hash, Float.floatToIntBits(vector.getWeight(i)));
+            }
+        }
+        return hash;
+    }
+
+    private static long mixHash(long hash, int value) {
+        return (hash ^ value) * 0x100000001b3L;
+    }
+
+    public int size() {
+        return businesses.size();
+    }
+}
@@ -0,0 +1,170 @@
+package main.java.service;
+
+import main.java.model.Business;
+
+import java.util.*;
+
+// Approximate nearest-neighbour index. Every business gets a MinHash signature, signatures are cut into
+// bands, and businesses sharing a band bucket become candidates. Only the candidates are scored exactly.
+// The first bands are hashed over the categories alone, since the category score carries most of the
+// final score, and the rest over the strongest terms together with the categories.
+public class MinHashIndex {
+    private static final int CATEGORY_BANDS = 8;
+    private static final int BANDS = 24;
+    private static final int ROWS = 2;
+    private static final int SIGNATURE_LENGTH = BANDS * ROWS;
+    private static final int CATEGORY_SIGNATURE_LENGTH = CATEGORY_BANDS * ROWS;
+    // Only the highest weighted terms go into a signature, the tail of a vector is mostly noise
+    private static final int TERMS_PER_SIGNATURE = 32;
+    private static final long SEED = 365L;
+
+    private final List<Business> businesses;
+    private final Map<String, Integer> ordinals;
+    private final SparseVector[] vectors;
+    private final List<List<String>> categories;
+    private final int[][] signatures;
+    private final long[] hashMultipliers;
+    private final long[] hashOffsets;
+    private final List<Map<Long, int[]>> bandBuckets;
+
+    // Constructor, computes the signature of every business and buckets it once per band
+    public MinHashIndex(List<Business> businesses, TfIdfVectorStore vectorStore) {
+        int businessCount = businesses.size();
+        this.businesses = businesses;
+        this.ordinals = new HashMap<>(businessCount * 2);
+        this.vectors = new SparseVector[businessCount];
+        this.categories = new ArrayList<>(businessCount);
+        this.signatures = new int[businessCount][];
+
+        Random random = new Random(SEED);
+        this.hashMultipliers = new long[SIGNATURE_LENGTH];
+        this.hashOffsets = new long[SIGNATURE_LENGTH];
+        for (int i = 0; i < SIGNATURE_LENGTH; i++) {
+            hashMultipliers[i] = random.nextLong() | 1L;
+            hashOffsets[i] = random.nextLong();
+        }
+
+        for (int ordinal = 0; ordinal < businessCount; ordinal++) {
+            Business business = businesses.get(ordinal);
+            ordinals.put(business.getBusiness_id(), ordinal);
+            vectors[ordinal] = vectorStore.getVector(business.getBusiness_id());
+            categories.add(business.getCategoriesList());
+            signatures[ordinal] = computeSignature(vectors[ordinal], categories.get(ordinal));
+        }
+
+        // Group businesses by the hash of each band of their signature
+        this.bandBuckets = new ArrayList<>(BANDS);
+        for (int band = 0; band < BANDS; band++) {
+            Map<Long, List<Integer>> buckets = new HashMap<>();
+            for (int ordinal = 0; ordinal < businessCount; ordinal++) {
+                if (isBucketed(ordinal, band)) {
+                    buckets.computeIfAbsent(bandKey(signatures[ordinal], band), k -> new ArrayList<>()).add(ordinal);
+                }
+            }
+            Map<Long, int[]> packed = new HashMap<>(buckets.size() * 2);
+            buckets.forEach((key, members) -> packed.put(key, members.stream().mapToInt(Integer::intValue).toArray()));
+            bandBuckets.add(packed);
+        }
+        System.out.println("Built MinHash index with " + BANDS + " bands of " + ROWS + " rows over " + businessCount + " businesses.");
+    }
+
+    // Computes the MinHash signature of a business, or null if it has neither terms nor categories
+    private int[] computeSignature(SparseVector vector, List<String> businessCategories) {
+        int[] elements = signatureElements(vector, businessCategories);
+        if (elements.length == 0) {
+            return null;
+        }
+        int termCount = elements.length - businessCategories.size();
+        int[] signature = new int[SIGNATURE_LENGTH];
+        Arrays.fill(signature, Integer.MAX_VALUE);
+        for (int e = 0; e < elements.length; e++) {
+            // Term elements only count towards the mixed bands
+            int first = e < termCount ? CATEGORY_SIGNATURE_LENGTH : 0;
+            for (int i = first; i < SIGNATURE_LENGTH; i++) {
+                int hash = (int) (mix(elements[e] * hashMultipliers[i] + hashOffsets[i]) >>> 33);
+                if (hash < signature[i]) {
+                    signature[i] = hash;
+                }
+            }
+        }
+        return signature;
+    }
+
+    // Picks the set a signature is taken over: the top weighted term IDs plus one element per category
+    private int[] signatureElements(SparseVector vector, List<String> businessCategories) {
+        int termCount = Math.min(TERMS_PER_SIGNATURE, vector.size());
+        Integer[] byWeight = new Integer[vector.size()];
+        for (int i = 0; i < byWeight.length; i++) {
+            byWeight[i] = i;
+        }
+        Arrays.sort(byWeight, (a, b) -> Float.compare(vector.getWeight(b), vector.getWeight(a)));
+
+        int[] elements = new int[termCount + businessCategories.size()];
+        for (int i = 0; i < termCount; i++) {
+            elements[i] = vector.getTermId(byWeight[i]);
+        }
+        // Term IDs are never negative, so setting the sign bit keeps category elements apart from them
+        for (int i = 0; i < businessCategories.size(); i++) {
+            elements[termCount + i] = businessCategories.get(i).toLowerCase().hashCode() | Integer.MIN_VALUE;
+        }
+        return elements;
+    }
+
+    // Businesses without categories stay out of the category bands, otherwise they would all share one bucket
+    private boolean isBucketed(int ordinal, int band) {
+        return signatures[ordinal] != null && (band >= CATEGORY_BANDS || !categories.get(ordinal).isEmpty());
+    }
+
+    // Hashes the rows of one band into a single bucket key
+    private static long bandKey(int[] signature, int band) {
+        long key = band;
+        for (int row = 0; row < ROWS; row++) {
+            key = key * 0x9E3779B97F4A7C15L + signature[band * ROWS + row];
+        }
+        return mix(key);
+    }
+
+    // 64-bit finalizer from SplitMix64, spreads the bits of a hash
+    private static long mix(long z) {
+        z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+        z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+        return z ^ (z >>> 31);
+    }
+
+    // Returns about the k most similar businesses, scoring only the businesses that share a band bucket with the target
+    public List<Business> findTopSimilar(Business targetBusiness, int k) {
+        Integer targetOrdinal = ordinals.get(targetBusiness.getBusiness_id());
+        if (targetOrdinal == null || vectors[targetOrdinal].isEmpty()) {
+            System.out.println("No reviews found for target business: " + targetBusiness.getName());
+            return Collections.emptyList();
+        }
+        int[] signature = signatures[targetOrdinal];
+
+        // Collect the candidates from every band bucket the target falls into
+        Set<Integer> candidates = new HashSet<>();
+        for (int band = 0; band < BANDS; band++) {
+            if (!isBucketed(targetOrdinal, band)) {
+                continue;
+            }
+            int[] members = bandBuckets.get(band).get(bandKey(signature, band));
+            if (members != null) {
+                for (int ordinal : members) {
+                    candidates.add(ordinal);
+                }
+            }
+        }
+        candidates.remove(targetOrdinal);
+
+        // Re-rank the candidates with the exact score
+        SparseVector target = vectors[targetOrdinal];
+        List<String> targetCategories = categories.get(targetOrdinal);
+        TopKHeap<Business> topBusinesses = new TopKHeap<>(k);
+        for (int ordinal : candidates) {
+            double textSimilarity = target.cosine(vectors[ordinal]);
+            double categorySimilarity = SimilarityCalculator.calculateCategorySimilarity(targetCategories, categories.get(ordinal));
+            topBusinesses.offer(businesses.get(ordinal), textSimilarity * SimilarityCalculator.TEXT_WEIGHT + categorySimilarity * SimilarityCalculator.CATEGORY_WEIGHT);
+        }
+        System.out.println("Re-ranked " + candidates.size() + " LSH candidates out of " + businesses.size() + " businesses.");
+        return topBusinesses.toSortedList();
+    }
+}
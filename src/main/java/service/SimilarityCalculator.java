@@ -3,253 +3,185 @@ package main.java.service;
 import main.java.model.*;
 
 import java.util.*;
-import java.util.stream.Collectors;
 
 public class SimilarityCalculator {
-
-    // Define a node for the custom frequency table, holding information about a term.
-    private static final class FrequencyNode {
-        String term;
-        int termCount;
-        Set<String> documents;
-        FrequencyNode next;
-
-        // Constructor
-        FrequencyNode(String term, FrequencyNode next) {
-            this.term = term;
-            this.termCount = 1;
-            this.documents = new HashSet<>();
-            this.next = next;
+    // Weights of the text and category similarity in the final score, and how many results a search returns
+    public static final double TEXT_WEIGHT = 0.3;
+    public static final double CATEGORY_WEIGHT = 0.7;
+    public static final int DEFAULT_RESULT_LIMIT = 10;
+
+    // Callback used to hand out the counts collected in the frequency table
+    public interface TermFrequencyVisitor {
+        void visit(int termId, int termCount, int documentCount);
+    }
+
+    // Counts the terms of one document (review) of a business into that business's frequency table
+    void countReviewTerms(FrequencyTable frequencyTable, int[] businessTermIds, Review review, int documentIndex, TermDictionary dictionary, Tokenizer tokenizer) {
+        // Update frequency counts for each term in this document, straight from the tokenizer
+        tokenizer.tokenize(review, true,
+                (buffer, length) -> frequencyTable.addOrUpdateFrequency(dictionary.idFor(buffer, length), documentIndex));
+        // Every review is enhanced with the categories and attributes of the business
+        for (int termId : businessTermIds) {
+            frequencyTable.addOrUpdateFrequency(termId, documentIndex);
         }
     }
 
-    // The table itself, initially sized at 8.
-    private FrequencyNode[] frequencyTable = new FrequencyNode[8];
-    private int documentCount = 0;
+    // Tokenizes the categories and true attributes of a business, which are added to each of its reviews
+    int[] getBusinessTermIds(Business business, TermDictionary dictionary, Tokenizer tokenizer) {
+        StringBuilder businessText = new StringBuilder();
 
-    // Updates the frequency count for a term or creates a new node if the term isnt found
-    private void addOrUpdateFrequency(String term, String documentId) {
-        int index = getIndex(term);
-        FrequencyNode node = findOrCreateNode(term, index);
-        node.termCount++;
-        node.documents.add(documentId);
-    }
-
-    // Computes the index for a term in the frequency table using its hash code
-    private int getIndex(String term) {
-        return term.hashCode() & (frequencyTable.length - 1);
-    }
-
-    // Finds an existing node for the term or creates a new one if not found
-    private FrequencyNode findOrCreateNode(String term, int index) {
-        for (FrequencyNode current = frequencyTable[index]; current != null; current = current.next) {
-            if (current.term.equals(term)) {
-                return current;
+        // Append categories
+        if (business.getCategories() != null) {
+            for (String category : business.getCategoriesList()) {
+                businessText.append(" ").append(category);
             }
         }
-        FrequencyNode newNode = new FrequencyNode(term, frequencyTable[index]);
-        frequencyTable[index] = newNode;
-        return newNode;
-    }
-
-    // Calculate TF-IDF values for terms in the documents related to a business
-    public Map<String, Double> calculateTfIdf(Business business, List<Review> reviews) {
-        resetFrequencyTable();
-        documentCount = reviews.size();
-
-        // Process each document (review) for the given business
-        for (Review review : reviews) {
-            String documentId = review.getReview_id();
-            processDocument(review, documentId, business);
-        }
-
-        return calculateTfIdfValues();
-    }
-
-    // Resets the frequency table to its initial state
-    private void resetFrequencyTable() {
-        frequencyTable = new FrequencyNode[8];
-    }
-
-    // Processes a single document and update frequency counts for each term
-    private void processDocument(Review review, String documentId, Business business) {
-        String preprocessedText = preprocessReviewText(review.getText());
-        String enhancedText = enhanceReviewText(business, preprocessedText);
-        String[] terms = enhancedText.toLowerCase().split("\\s+");
 
-        // Update frequency counts for each term in this document
-        for (String term : terms) {
-            addOrUpdateFrequency(term, documentId);
+        // Append attributes if they are present/true
+        if (business.getAttributes() != null) {
+            business.getAttributes().forEach((key, value) -> {
+                if (value) {
+                    businessText.append(" ").append(key);
+                }
+            });
         }
-    }
 
-    // Calculates TF-IDF values using the custom frequency table
-    private Map<String, Double> calculateTfIdfValues() {
-        Map<String, Double> tfIdf = new HashMap<>();
-        // Iterate over each bucket in the frequency table
-        for (FrequencyNode bucket : frequencyTable) {
-            // Iterate over each node in the bucket
-            for (FrequencyNode node = bucket; node != null; node = node.next) {
-                double tf = (double) node.termCount / documentCount;
-                double idf = Math.log((double) documentCount / node.documents.size());
-                tfIdf.put(node.term, tf * idf);
-            }
-        }
-        return tfIdf;
+        List<Integer> termIds = new ArrayList<>();
+        tokenizer.tokenize(businessText.toString(), false, (buffer, length) -> termIds.add(dictionary.idFor(buffer, length)));
+        return termIds.stream().mapToInt(Integer::intValue).toArray();
     }
 
     // Calculate the cosine similarity between two TF-IDF vectors
-    public double calculateCosineSimilarity(Map<String, Double> tfIdfA, Map<String, Double> tfIdfB) {
-        Set<String> allTerms = new HashSet<>();
-        allTerms.addAll(tfIdfA.keySet());
-        allTerms.addAll(tfIdfB.keySet());
-
-        double dotProduct = 0.0;
-        double normA = 0.0;
-        double normB = 0.0;
-
-        // Compute dot product and norms for cosine similarity calculation
-        for (String term : allTerms) {
-            double tfIdfValueA = tfIdfA.getOrDefault(term, 0.0);
-            double tfIdfValueB = tfIdfB.getOrDefault(term, 0.0);
-
-            dotProduct += tfIdfValueA * tfIdfValueB;
-            normA += Math.pow(tfIdfValueA, 2);
-            normB += Math.pow(tfIdfValueB, 2);
-        }
-
-        // Avoid division by zero
-        if (normA == 0 || normB == 0) {
-            return 0.0;
-        }
-
-        // Return the cosine similarity score
-        return dotProduct / (Math.sqrt(normA) * Math.sqrt(normB));
+    public double calculateCosineSimilarity(SparseVector tfIdfA, SparseVector tfIdfB) {
+        return tfIdfA.cosine(tfIdfB);
     }
 
-    // Finds businesses similar to a target business based on text and category similarity
-    public List<Business> findSimilarBusinesses(Business targetBusiness, List<Business> allBusinesses, List<Review> allReviews) {
+    // Finds businesses similar to a target business based on text and category similarity, using precomputed vectors.
+    // The catalog is split across cores, each worker keeps its own top-k heap and the heaps are merged at the end.
+    public List<Business> findSimilarBusinesses(Business targetBusiness, List<Business> allBusinesses, TfIdfVectorStore vectorStore) {
         if (targetBusiness == null) {
             System.out.println("Target business is null.");
             return Collections.emptyList();
         }
 
-        List<Review> targetReviews = getReviewsForBusiness(targetBusiness, allReviews);
-        if (targetReviews == null || targetReviews.isEmpty()) {
+        SparseVector targetTfIdf = vectorStore.getVector(targetBusiness.getBusiness_id());
+        if (targetTfIdf.isEmpty()) {
             System.out.println("No reviews found for target business: " + targetBusiness.getName());
             return Collections.emptyList();
         }
-        Map<String, Double> targetTfIdf = calculateTfIdf(targetBusiness, getReviewsForBusiness(targetBusiness, allReviews));
-        Map<Business, Double> similarityScores = new HashMap<>();
+        List<String> targetCategories = targetBusiness.getCategoriesList();
 
         // Compare the target business to each business in the list.
-        for (Business business : allBusinesses) {
-            if (!business.equals(targetBusiness)) {
-                // Calculate TF-IDF for the compared business
-                List<Review> businessReviews = getReviewsForBusiness(business, allReviews);
-                Map<String, Double> businessTfIdf = calculateTfIdf(business, businessReviews);
-
-                // Calculate text and category similarity
-                double textSimilarity = calculateCosineSimilarity(targetTfIdf, businessTfIdf);
-                double categorySimilarity = calculateCategorySimilarity(targetBusiness, business);
-
-                // Combine text and category similarities into a final score
-                double finalScore = textSimilarity * 0.3 + categorySimilarity * 0.7;
-                similarityScores.put(business, finalScore);
-
-                System.out.println("Similarity with " + business.getName() + ": Text=" + textSimilarity + ", Category=" + categorySimilarity + ", Final=" + finalScore);
+        TopKHeap<Business> topBusinesses = allBusinesses.parallelStream()
+                .filter(business -> !business.equals(targetBusiness))
+                .collect(() -> new TopKHeap<>(DEFAULT_RESULT_LIMIT),
+                        (heap, business) -> heap.offer(business, calculateSimilarity(targetTfIdf, targetCategories, business, vectorStore)),
+                        TopKHeap::merge);
+
+        System.out.println("Compared " + targetBusiness.getName() + " against " + (allBusinesses.size() - 1) + " businesses.");
+        return topBusinesses.toSortedList();
+    }
+
+    // Finds the businesses similar to each of several targets (e.g. every location of a chain) in one pass over the
+    // catalog: each business's vector and categories are looked up once and scored against all targets, and every
+    // target keeps its own top-k heap. Targets without reviews get an empty list.
+    public Map<Business, List<Business>> findSimilarBusinesses(List<Business> targetBusinesses, List<Business> allBusinesses, TfIdfVectorStore vectorStore) {
+        List<Business> targets = new ArrayList<>();
+        List<SparseVector> targetVectors = new ArrayList<>();
+        Map<Business, List<Business>> results = new LinkedHashMap<>();
+        for (Business target : targetBusinesses) {
+            SparseVector vector = vectorStore.getVector(target.getBusiness_id());
+            if (vector.isEmpty()) {
+                System.out.println("No reviews found for target business: " + target.getName());
+                results.put(target, Collections.emptyList());
+            } else {
+                targets.add(target);
+                targetVectors.add(vector);
             }
         }
+        if (targets.isEmpty()) {
+            return results;
+        }
+        List<List<String>> targetCategories = new ArrayList<>();
+        for (Business target : targets) {
+            targetCategories.add(target.getCategoriesList());
+        }
 
-        // Sort businesses by similarity score and return the top 10
-        return similarityScores.entrySet().stream()
-                .sorted(Map.Entry.comparingByValue(Comparator.reverseOrder()))
-                .map(Map.Entry::getKey)
-                .limit(10)
-                .collect(Collectors.toList());
-    }
-
-    // Calculate the similarity between two businesses based on the categories they belong to
-    private double calculateCategorySimilarity(Business businessA, Business businessB) {
-        // Retrieve the list of categories for each business
-        List<String> categoriesA = businessA.getCategoriesList();
-        List<String> categoriesB = businessB.getCategoriesList();
-
-        // Count the number of common categories between the two businesses
-        long commonCategories = categoriesA.stream().filter(categoriesB::contains).count();
-
-        // Calculate and return the category similarity score
-        return (double) commonCategories / (categoriesA.size() + categoriesB.size() - commonCategories);
+        int targetCount = targets.size();
+        List<TopKHeap<Business>> topBusinesses = allBusinesses.parallelStream()
+                .collect(() -> newHeaps(targetCount),
+                        (heaps, business) -> {
+                            SparseVector businessTfIdf = vectorStore.getVector(business.getBusiness_id());
+                            List<String> businessCategories = business.getCategoriesList();
+                            for (int t = 0; t < targetCount; t++) {
+                                if (business.equals(targets.get(t))) {
+                                    continue;
+                                }
+                                double textSimilarity = calculateCosineSimilarity(targetVectors.get(t), businessTfIdf);
+                                double categorySimilarity = calculateCategorySimilarity(targetCategories.get(t), businessCategories);
+                                heaps.get(t).offer(business, textSimilarity * TEXT_WEIGHT + categorySimilarity * CATEGORY_WEIGHT);
+                            }
+                        },
+                        (heaps, other) -> {
+                            for (int t = 0; t < targetCount; t++) {
+                                heaps.get(t).merge(other.get(t));
+                            }
+                        });
+
+        System.out.println("Compared " + targetCount + " target(s) against " + allBusinesses.size() + " businesses in one pass.");
+        for (int t = 0; t < targetCount; t++) {
+            results.put(targets.get(t), topBusinesses.get(t).toSortedList());
+        }
+        return results;
     }
 
-    // Gets all reviews associated with a business
-    private List<Review> getReviewsForBusiness(Business business, List<Review> reviews) {
-        List<Review> businessReviews = new ArrayList<>();
-        System.out.println("Searching for reviews for business ID: " + business.getBusiness_id());
-        int reviewCount = 0;
-        for (Review review : reviews) {
-            if (review.getBusiness_id().equals(business.getBusiness_id())) {
-                businessReviews.add(review);
-                reviewCount++;
-            }
+    private static List<TopKHeap<Business>> newHeaps(int count) {
+        List<TopKHeap<Business>> heaps = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            heaps.add(new TopKHeap<>(DEFAULT_RESULT_LIMIT));
         }
-        System.out.println("Found " + reviewCount + " reviews for business ID: " + business.getBusiness_id());
-        return businessReviews;
+        return heaps;
     }
 
-    // Enhance the text of a review by appending categories and attributes of the business
-    private String enhanceReviewText(Business business, String reviewText) {
-        StringBuilder enhancedText = new StringBuilder(reviewText);
+    // Combines the text and category similarity of a business to the target into a final score
+    private double calculateSimilarity(SparseVector targetTfIdf, List<String> targetCategories, Business business, TfIdfVectorStore vectorStore) {
+        // Look up the stored TF-IDF vector for the compared business
+        SparseVector businessTfIdf = vectorStore.getVector(business.getBusiness_id());
 
-        // Append categories to the review text
-        if (business.getCategories() != null) {
-            for (String category : business.getCategoriesList()) {
-                enhancedText.append(" ").append(category);
-            }
-        }
+        // Calculate text and category similarity
+        double textSimilarity = calculateCosineSimilarity(targetTfIdf, businessTfIdf);
+        double categorySimilarity = calculateCategorySimilarity(targetCategories, business.getCategoriesList());
 
-        // Append attributes to the review text if they are present/true
-        if (business.getAttributes() != null) {
-            business.getAttributes().forEach((key, value) -> {
-                if (value) {
-                    enhancedText.append(" ").append(key);
-                }
-            });
-        }
+        // Combine text and category similarities into a final score
+        return textSimilarity * TEXT_WEIGHT + categorySimilarity * CATEGORY_WEIGHT;
+    }
 
-        return enhancedText.toString();
+    // Finds businesses similar to a target business, only scoring the businesses the inverted index can't rule out
+    public List<Business> findSimilarBusinesses(Business targetBusiness, InvertedIndex invertedIndex) {
+        if (targetBusiness == null) {
+            System.out.println("Target business is null.");
+            return Collections.emptyList();
+        }
+        return invertedIndex.findTopSimilar(targetBusiness, DEFAULT_RESULT_LIMIT);
     }
 
-    // Preprocesses the review text by converting it to lowercase, and removing punctuation, stopwords, and extra spaces
-    private String preprocessReviewText(String text) {
-        text = text.toLowerCase();
-        text = text.replaceAll("[^a-zA-Z0-9\\s]", "");
-        text = removeStopWords(text);
-        text = text.trim().replaceAll("\\s+", " ");
-        return text;
+    // Approximately finds businesses similar to a target business, only re-ranking the candidates from the LSH buckets
+    public List<Business> findSimilarBusinesses(Business targetBusiness, MinHashIndex minHashIndex) {
+        if (targetBusiness == null) {
+            System.out.println("Target business is null.");
+            return Collections.emptyList();
+        }
+        return minHashIndex.findTopSimilar(targetBusiness, DEFAULT_RESULT_LIMIT);
     }
 
-    // Removes common English stopwords from the text
-    private String removeStopWords(String text) {
-        // Typical list of stopWords that i found online
-        Set<String> stopWords = Set.of(
-                "i", "me", "my", "myself", "we", "our", "ours", "ourselves", "you", "your", "yours",
-                "yourself", "yourselves", "he", "him", "his", "himself", "she", "her", "hers",
-                "herself", "it", "its", "itself", "they", "them", "their", "theirs", "themselves",
-                "what", "which", "who", "whom", "this", "that", "these", "those", "am", "is", "are",
-                "was", "were", "be", "been", "being", "have", "has", "had", "having", "do", "does",
-                "did", "doing", "a", "an", "the", "and", "but", "if", "or", "because", "as", "until",
-                "while", "of", "at", "by", "for", "with", "about", "against", "between", "into",
-                "through", "during", "before", "after", "above", "below", "to", "from", "up", "down",
-                "in", "out", "on", "off", "over", "under", "again", "further", "then", "once", "here",
-                "there", "when", "where", "why", "how", "all", "any", "both", "each", "few", "more",
-                "most", "other", "some", "such", "no", "nor", "not", "only", "own", "same", "so",
-                "than", "too", "very", "s", "t", "can", "will", "just", "don", "should", "now"
-        );
+    // Calculate the similarity between two businesses based on the categories they belong to (Jaccard similarity)
+    static double calculateCategorySimilarity(List<String> categoriesA, List<String> categoriesB) {
+        // Count the number of common categories between the two businesses
+        long commonCategories = categoriesA.stream().filter(categoriesB::contains).count();
+        long unionSize = categoriesA.size() + categoriesB.size() - commonCategories;
 
-        return Arrays.stream(text.split("\\s+"))
-                .filter(term -> !stopWords.contains(term))
-                .collect(Collectors.joining(" "));
+        // Calculate and return the category similarity score, two businesses without categories share nothing
+        return unionSize == 0 ? 0.0 : (double) commonCategories / unionSize;
     }
 
     // Prints the top similar businesses based on cosine similarity scores
@@ -0,0 +1,115 @@
+package main.java.service;
+
+import java.io.*;
+import java.util.*;
+
+// Precomputed top-k similar businesses for every business, answered with a single array lookup.
+// File layout: magic, version, business count, k, every business ID, then per business the number
+// of neighbours followed by their ordinals (int) and scores (float).
+public class SimilarityTable {
+    private static final int MAGIC = 0x53494D54; // "SIMT"
+    private static final int VERSION = 1;
+
+    private final String[] businessIds;
+    private final Map<String, Integer> ordinals;
+    private final int k;
+    private final int[][] neighbors;
+    private final float[][] scores;
+
+    // Constructor
+    SimilarityTable(String[] businessIds, int k, int[][] neighbors, float[][] scores) {
+        this.businessIds = businessIds;
+        this.k = k;
+        this.neighbors = neighbors;
+        this.scores = scores;
+        this.ordinals = new HashMap<>(businessIds.length * 2);
+        for (int i = 0; i < businessIds.length; i++) {
+            ordinals.put(businessIds[i], i);
+        }
+    }
+
+    // Returns the IDs of the most similar businesses from best to worst, or null if the business isn't in the table
+    public List<String> getSimilarIds(String businessId, int limit) {
+        Integer ordinal = ordinals.get(businessId);
+        if (ordinal == null) {
+            return null;
+        }
+        int[] row = neighbors[ordinal];
+        List<String> similarIds = new ArrayList<>(Math.min(limit, row.length));
+        for (int i = 0; i < row.length && i < limit; i++) {
+            similarIds.add(businessIds[row[i]]);
+        }
+        return similarIds;
+    }
+
+    // Returns the scores matching getSimilarIds, or null if the business isn't in the table
+    public float[] getScores(String businessId) {
+        Integer ordinal = ordinals.get(businessId);
+        return ordinal == null ? null : scores[ordinal].clone();
+    }
+
+    // Number of neighbours stored per business
+    public int getK() {
+        return k;
+    }
+
+    public int size() {
+        return businessIds.length;
+    }
+
+    // Writes the table in its binary format
+    public void writeToFile(String path) throws IOException {
+        File tableFile = new File(path);
+        File tableDir = tableFile.getParentFile();
+        if (tableDir != null && !tableDir.exists() && !tableDir.mkdirs()) {
+            throw new IOException("Failed to create similarity table directory at " + tableDir.getAbsolutePath());
+        }
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(tableFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeInt(businessIds.length);
+            out.writeInt(k);
+            for (String businessId : businessIds) {
+                out.writeUTF(businessId);
+            }
+            for (int i = 0; i < businessIds.length; i++) {
+                out.writeInt(neighbors[i].length);
+                for (int neighbor : neighbors[i]) {
+                    out.writeInt(neighbor);
+                }
+                for (float score : scores[i]) {
+                    out.writeFloat(score);
+                }
+            }
+        }
+    }
+
+    // Reads a table written by writeToFile
+    public static SimilarityTable readFromFile(String path) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(path)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IOException("Not a similarity table file: " + path);
+            }
+            int businessCount = in.readInt();
+            int k = in.readInt();
+            String[] businessIds = new String[businessCount];
+            for (int i = 0; i < businessCount; i++) {
+                businessIds[i] = in.readUTF();
+            }
+            int[][] neighbors = new int[businessCount][];
+            float[][] scores = new float[businessCount][];
+            for (int i = 0; i < businessCount; i++) {
+                int count = in.readInt();
+                neighbors[i] = new int[count];
+                scores[i] = new float[count];
+                for (int j = 0; j < count; j++) {
+                    neighbors[i][j] = in.readInt();
+                }
+                for (int j = 0; j < count; j++) {
+                    scores[i][j] = in.readFloat();
+                }
+            }
+            return new SimilarityTable(businessIds, k, neighbors, scores);
+        }
+    }
+}
@@ -0,0 +1,231 @@
+package main.java.service;
+
+import main.java.loader.DataLoader;
+import main.java.model.Business;
+
+import java.io.*;
+import java.util.*;
+import java.util.stream.IntStream;
+
+// Batch job that computes the top-k similar businesses of every business and writes a SimilarityTable.
+// Businesses are processed in fixed-size chunks in load order, chunks run in parallel across cores, and every
+// finished chunk is appended to a checkpoint file so an interrupted run can resume where it stopped. Every
+// business is still scored against the whole catalog, the inverted index does the pruning.
+// The checkpoint starts with a header naming the dataset (the inverted index fingerprint), k and the chunk size,
+// a checkpoint left by a different dataset or setting is thrown away instead of resumed.
+public class SimilarityTableBuilder {
+    private static final int CHECKPOINT_MAGIC = 0x53544350; // "STCP"
+    private static final int CHECKPOINT_HEADER_BYTES = 20;
+    // Businesses per chunk: small enough to spread evenly over the cores and to lose little work on a crash
+    private static final int CHUNK_SIZE = 256;
+
+    private final List<Business> businesses;
+    private final InvertedIndex invertedIndex;
+    private final int k;
+
+    // One computed row of the table, kept by business ID so it survives a restart with a different load order
+    private static final class Row {
+        final String[] neighborIds;
+        final float[] scores;
+
+        Row(String[] neighborIds, float[] scores) {
+            this.neighborIds = neighborIds;
+            this.scores = scores;
+        }
+    }
+
+    // Constructor
+    public SimilarityTableBuilder(List<Business> businesses, InvertedIndex invertedIndex, int k) {
+        this.businesses = businesses;
+        this.invertedIndex = invertedIndex;
+        this.k = k;
+    }
+
+    // Computes every row, skipping the chunks already recorded in the checkpoint file
+    public SimilarityTable build(String checkpointPath) throws IOException {
+        long startTime = System.nanoTime();
+        long fingerprint = invertedIndex.fingerprint();
+        Map<String, Row> rows = new HashMap<>();
+        Set<Integer> completedChunks = readCheckpoint(checkpointPath, fingerprint, rows);
+        int chunkCount = (businesses.size() + CHUNK_SIZE - 1) / CHUNK_SIZE;
+        System.out.println("Building similarity table: " + chunkCount + " chunks of " + CHUNK_SIZE + " businesses, "
+                + completedChunks.size() + " already checkpointed.");
+
+        try (DataOutputStream checkpoint = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(checkpointPath, true)))) {
+            if (new File(checkpointPath).length() == 0) {
+                writeCheckpointHeader(checkpoint, fingerprint);
+            }
+            IntStream.range(0, chunkCount).parallel()
+                    .filter(chunk -> !completedChunks.contains(chunk))
+                    .forEach(chunk -> {
+                        int from = chunk * CHUNK_SIZE;
+                        Map<String, Row> chunkRows = computeChunk(businesses.subList(from, Math.min(businesses.size(), from + CHUNK_SIZE)));
+                        synchronized (checkpoint) {
+                            try {
+                                writeCheckpoint(checkpoint, chunk, chunkRows);
+                            } catch (IOException e) {
+                                throw new UncheckedIOException(e);
+                            }
+                            rows.putAll(chunkRows);
+                        }
+                    });
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+
+        SimilarityTable table = toTable(rows);
+        System.out.println("Built similarity table for " + table.size() + " businesses in " + (System.nanoTime() - startTime) / 1_000_000 + " ms.");
+        return table;
+    }
+
+    // Scores every business of one chunk
+    private Map<String, Row> computeChunk(List<Business> chunk) {
+        Map<String, Row> chunkRows = new HashMap<>(chunk.size() * 2);
+        for (Business business : chunk) {
+            TopKHeap<Business> top = invertedIndex.scoreTopSimilar(business, k);
+            List<Business> similar = top.toSortedList();
+            double[] similarScores = top.toSortedScores();
+            String[] neighborIds = new String[similar.size()];
+            float[] scores = new float[similar.size()];
+            for (int i = 0; i < neighborIds.length; i++) {
+                neighborIds[i] = similar.get(i).getBusiness_id();
+                scores[i] = (float) similarScores[i];
+            }
+            chunkRows.put(business.getBusiness_id(), new Row(neighborIds, scores));
+        }
+        return chunkRows;
+    }
+
+    // Writes what the checkpoint was computed from, before the first chunk
+    private void writeCheckpointHeader(DataOutputStream checkpoint, long fingerprint) throws IOException {
+        checkpoint.writeInt(CHECKPOINT_MAGIC);
+        checkpoint.writeLong(fingerprint);
+        checkpoint.writeInt(k);
+        checkpoint.writeInt(CHUNK_SIZE);
+        checkpoint.flush();
+    }
+
+    // Appends a finished chunk to the checkpoint and flushes it, so the chunk is durable before moving on
+    private static void writeCheckpoint(DataOutputStream checkpoint, int chunk, Map<String, Row> chunkRows) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream record = new DataOutputStream(bytes);
+        record.writeInt(chunk);
+        record.writeInt(chunkRows.size());
+        for (Map.Entry<String, Row> entry : chunkRows.entrySet()) {
+            Row row = entry.getValue();
+            record.writeUTF(entry.getKey());
+            record.writeInt(row.neighborIds.length);
+            for (int i = 0; i < row.neighborIds.length; i++) {
+                record.writeUTF(row.neighborIds[i]);
+                record.writeFloat(row.scores[i]);
+            }
+        }
+        // Length prefix, so a chunk cut off by a crash is recognised and redone
+        checkpoint.writeInt(bytes.size());
+        bytes.writeTo(checkpoint);
+        checkpoint.flush();
+    }
+
+    // Loads the rows of every complete chunk in the checkpoint file and returns the numbers of those chunks.
+    // A checkpoint from another dataset, k or chunk size is emptied, its rows would be stale.
+    private Set<Integer> readCheckpoint(String checkpointPath, long fingerprint, Map<String, Row> rows) throws IOException {
+        Set<Integer> completedChunks = new HashSet<>();
+        File checkpointFile = new File(checkpointPath);
+        if (!checkpointFile.exists()) {
+            File checkpointDir = checkpointFile.getParentFile();
+            if (checkpointDir != null && !checkpointDir.exists() && !checkpointDir.mkdirs()) {
+                throw new IOException("Failed to create checkpoint directory at " + checkpointDir.getAbsolutePath());
+            }
+            return completedChunks;
+        }
+        long validLength = 0;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(checkpointFile)))) {
+            if (in.readInt() != CHECKPOINT_MAGIC || in.readLong() != fingerprint || in.readInt() != k || in.readInt() != CHUNK_SIZE) {
+                System.out.println("Checkpoint was written for a different dataset or settings, starting over.");
+            } else {
+                validLength = CHECKPOINT_HEADER_BYTES;
+                while (true) {
+                    int length = in.readInt();
+                    byte[] recordBytes = new byte[length];
+                    in.readFully(recordBytes);
+                    DataInputStream record = new DataInputStream(new ByteArrayInputStream(recordBytes));
+                    int chunk = record.readInt();
+                    int rowCount = record.readInt();
+                    for (int r = 0; r < rowCount; r++) {
+                        String businessId = record.readUTF();
+                        int count = record.readInt();
+                        String[] neighborIds = new String[count];
+                        float[] scores = new float[count];
+                        for (int i = 0; i < count; i++) {
+                            neighborIds[i] = record.readUTF();
+                            scores[i] = record.readFloat();
+                        }
+                        rows.put(businessId, new Row(neighborIds, scores));
+                    }
+                    completedChunks.add(chunk);
+                    validLength += 4 + length;
+                }
+            }
+        } catch (EOFException e) {
+            // End of the checkpoint, possibly in the middle of a chunk that never finished or of the header
+        }
+        // Drop a partially written chunk (or a stale checkpoint) so new chunks are appended after the last complete one
+        if (validLength < checkpointFile.length()) {
+            try (RandomAccessFile file = new RandomAccessFile(checkpointFile, "rw")) {
+                file.setLength(validLength);
+            }
+        }
+        return completedChunks;
+    }
+
+    // Converts the rows into the table's ordinal-based arrays
+    private SimilarityTable toTable(Map<String, Row> rows) {
+        String[] businessIds = new String[businesses.size()];
+        Map<String, Integer> ordinals = new HashMap<>(businesses.size() * 2);
+        for (int i = 0; i < businessIds.length; i++) {
+            businessIds[i] = businesses.get(i).getBusiness_id();
+            ordinals.put(businessIds[i], i);
+        }
+        int[][] neighbors = new int[businessIds.length][];
+        float[][] scores = new float[businessIds.length][];
+        for (int i = 0; i < businessIds.length; i++) {
+            Row row = rows.get(businessIds[i]);
+            if (row == null) {
+                neighbors[i] = new int[0];
+                scores[i] = new float[0];
+                continue;
+            }
+            // Skip neighbours that aren't in the current list, e.g. rows written before a business was removed
+            int[] rowNeighbors = new int[row.neighborIds.length];
+            float[] rowScores = new float[row.neighborIds.length];
+            int count = 0;
+            for (int j = 0; j < row.neighborIds.length; j++) {
+                Integer ordinal = ordinals.get(row.neighborIds[j]);
+                if (ordinal != null) {
+                    rowNeighbors[count] = ordinal;
+                    rowScores[count++] = row.scores[j];
+                }
+            }
+            neighbors[i] = Arrays.copyOf(rowNeighbors, count);
+            scores[i] = Arrays.copyOf(rowScores, count);
+        }
+        return new SimilarityTable(businessIds, k, neighbors, scores);
+    }
+
+    // Runs the batch job over the serialized businesses and the stored TF-IDF vectors
+    public static void main(String[] args) {
+        try {
+            List<Business> businesses = DataLoader.loadSerializedBusinessData();
+            TfIdfVectorStore vectorStore = TfIdfVectorStore.deserializeFromFile(DataLoader.VECTOR_DATA_PATH);
+            InvertedIndex invertedIndex = new InvertedIndex(businesses, vectorStore);
+            SimilarityTableBuilder builder = new SimilarityTableBuilder(businesses, invertedIndex, SimilarityCalculator.DEFAULT_RESULT_LIMIT);
+            SimilarityTable table = builder.build(DataLoader.SIMILARITY_TABLE_PATH + ".checkpoint");
+            table.writeToFile(DataLoader.SIMILARITY_TABLE_PATH);
+            // The table is complete, so the checkpoint is no longer needed
+            new File(DataLoader.SIMILARITY_TABLE_PATH + ".checkpoint").delete();
+        } catch (IOException | ClassNotFoundException e) {
+            System.err.println("Failed to build similarity table: " + e.getMessage());
+            e.printStackTrace();
+        }
+    }
+}
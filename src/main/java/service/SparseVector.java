@@ -0,0 +1,96 @@
+package main.java.service;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+// Sparse TF-IDF vector stored as term IDs sorted ascending with a parallel array of weights
+public final class SparseVector implements Serializable {
+    private static final long serialVersionUID = 1L;
+    public static final SparseVector EMPTY = new SparseVector(new int[0], new float[0]);
+
+    private final int[] termIds;
+    private final float[] weights;
+    private final double norm;
+
+    // Constructor, expects termIds to be sorted and free of duplicates
+    private SparseVector(int[] termIds, float[] weights) {
+        this.termIds = termIds;
+        this.weights = weights;
+        double sumOfSquares = 0.0;
+        for (float weight : weights) {
+            sumOfSquares += (double) weight * weight;
+        }
+        this.norm = Math.sqrt(sumOfSquares);
+    }
+
+    // Builds a vector from the first length entries of unsorted parallel arrays, dropping zero weights
+    public static SparseVector of(int[] termIds, double[] weights, int length) {
+        long[] packed = new long[length];
+        int count = 0;
+        for (int i = 0; i < length; i++) {
+            if (weights[i] != 0.0) {
+                // Pack the term ID in the high bits and the array index in the low bits so one sort orders both
+                packed[count++] = ((long) termIds[i] << 32) | i;
+            }
+        }
+        Arrays.sort(packed, 0, count);
+        int[] sortedIds = new int[count];
+        float[] sortedWeights = new float[count];
+        for (int i = 0; i < count; i++) {
+            sortedIds[i] = (int) (packed[i] >>> 32);
+            sortedWeights[i] = (float) weights[(int) packed[i]];
+        }
+        return count == 0 ? EMPTY : new SparseVector(sortedIds, sortedWeights);
+    }
+
+    // Cosine similarity computed as a merge-join over the two sorted ID arrays
+    public double cosine(SparseVector other) {
+        if (norm == 0 || other.norm == 0) {
+            return 0.0;
+        }
+        return dot(other) / (norm * other.norm);
+    }
+
+    // Dot product of two vectors, walks both sorted arrays once without allocating
+    public double dot(SparseVector other) {
+        int[] idsA = termIds;
+        int[] idsB = other.termIds;
+        float[] weightsA = weights;
+        float[] weightsB = other.weights;
+        int i = 0;
+        int j = 0;
+        double dotProduct = 0.0;
+        while (i < idsA.length && j < idsB.length) {
+            int idA = idsA[i];
+            int idB = idsB[j];
+            if (idA == idB) {
+                dotProduct += (double) weightsA[i++] * weightsB[j++];
+            } else if (idA < idB) {
+                i++;
+            } else {
+                j++;
+            }
+        }
+        return dotProduct;
+    }
+
+    public int size() {
+        return termIds.length;
+    }
+
+    public int getTermId(int index) {
+        return termIds[index];
+    }
+
+    public float getWeight(int index) {
+        return weights[index];
+    }
+
+    public double getNorm() {
+        return norm;
+    }
+
+    public boolean isEmpty() {
+        return termIds.length == 0;
+    }
+}
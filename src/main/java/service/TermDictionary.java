@@ -0,0 +1,108 @@
+package main.java.service;
+
+import java.io.Serializable;
+import java.util.*;
+
+// Corpus-wide dictionary that gives every distinct term a dense int ID.
+// Open addressing over the term's chars, so a token can be looked up straight from the tokenizer's
+// buffer and a String is only made the first time a term is seen.
+public class TermDictionary implements Serializable {
+    private static final long serialVersionUID = 2L;
+    private String[] keys = new String[1024];
+    private int[] ids = new int[1024];
+    private final List<String> terms = new ArrayList<>();
+
+    // Returns the ID of the term held in the first length chars, assigning the next free ID if the term is new
+    public int idFor(char[] chars, int length) {
+        int slot = findSlot(chars, length);
+        if (keys[slot] != null) {
+            return ids[slot];
+        }
+        int id = terms.size();
+        String term = new String(chars, 0, length);
+        keys[slot] = term;
+        ids[slot] = id;
+        terms.add(term);
+        // Keep the table at most half full so probe sequences stay short
+        if (terms.size() * 2 > keys.length) {
+            grow();
+        }
+        return id;
+    }
+
+    // Returns the ID of a term, assigning the next free ID if the term is new
+    public int idFor(String term) {
+        return idFor(term.toCharArray(), term.length());
+    }
+
+    // Returns the ID of a term, or -1 if the term has never been seen
+    public int getId(String term) {
+        int slot = findSlot(term.toCharArray(), term.length());
+        return keys[slot] == null ? -1 : ids[slot];
+    }
+
+    // Returns the term for an ID
+    public String getTerm(int id) {
+        return terms.get(id);
+    }
+
+    public int size() {
+        return terms.size();
+    }
+
+    // Linear probing: returns the slot holding the term, or the empty slot where it would go
+    private int findSlot(char[] chars, int length) {
+        int mask = keys.length - 1;
+        int slot = spread(hash(chars, length)) & mask;
+        while (keys[slot] != null && !matches(keys[slot], chars, length)) {
+            slot = (slot + 1) & mask;
+        }
+        return slot;
+    }
+
+    // Doubles the table and reinserts every term
+    private void grow() {
+        String[] oldKeys = keys;
+        int[] oldIds = ids;
+        keys = new String[oldKeys.length * 2];
+        ids = new int[oldKeys.length * 2];
+        int mask = keys.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            if (oldKeys[i] != null) {
+                int slot = spread(oldKeys[i].hashCode()) & mask;
+                while (keys[slot] != null) {
+                    slot = (slot + 1) & mask;
+                }
+                keys[slot] = oldKeys[i];
+                ids[slot] = oldIds[i];
+            }
+        }
+    }
+
+    // Same hash as String.hashCode, so stored keys can be rehashed without copying their chars
+    private static int hash(char[] chars, int length) {
+        int hash = 0;
+        for (int i = 0; i < length; i++) {
+            hash = 31 * hash + chars[i];
+        }
+        return hash;
+    }
+
+    // Mixes the high bits into the low bits used for the slot index
+    private static int spread(int hash) {
+        hash *= 0x9E3779B9;
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean matches(String key, char[] chars, int length) {
+        if (key.length() != length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (key.charAt(i) != chars[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -0,0 +1,287 @@
+package main.java.service;
+
+import main.java.model.Business;
+import main.java.model.Review;
+
+import java.io.*;
+import java.util.*;
+
+// Holds the precomputed TF-IDF vector of every business so searches only have to compare vectors
+public class TfIdfVectorStore implements Serializable {
+    private static final long serialVersionUID = 2L;
+    private final TermDictionary dictionary;
+    private final Map<String, SparseVector> vectors;
+
+    // Constructor
+    private TfIdfVectorStore(TermDictionary dictionary, Map<String, SparseVector> vectors) {
+        this.dictionary = dictionary;
+        this.vectors = vectors;
+    }
+
+    // Growable arrays reused for the weights of one business at a time
+    private static final class WeightBuffer {
+        int[] termIds = new int[64];
+        double[] weights = new double[64];
+        int length;
+
+        void add(int termId, double weight) {
+            if (length == termIds.length) {
+                termIds = Arrays.copyOf(termIds, length * 2);
+                weights = Arrays.copyOf(weights, length * 2);
+            }
+            termIds[length] = termId;
+            weights[length++] = weight;
+        }
+    }
+
+    // Builds a store from reviews streamed in one at a time, in any order.
+    // Only the per-business term counts are kept, never the reviews themselves.
+    // TF is per business, IDF is over every review in the corpus.
+    // The counts can be saved and loaded again, so a later ingest only adds and removes the reviews that changed.
+    public static final class Builder {
+        private static final int COUNTS_MAGIC = 0x54434E54; // "TCNT"
+        private static final int COUNTS_VERSION = 1;
+
+        private final SimilarityCalculator calculator = new SimilarityCalculator();
+        private final TermDictionary dictionary;
+        private final Tokenizer tokenizer = new Tokenizer();
+        private final Map<String, Business> businessesById;
+        private final Map<String, BusinessCounts> countsByBusiness = new HashMap<>();
+        private long totalReviews;
+        private long tokenizeNanos;
+        // Tokens counted by builders merged into this one
+        private long mergedTokenCount;
+
+        // Term counts of one business, filled in as its reviews arrive
+        private static final class BusinessCounts {
+            final FrequencyTable frequencyTable = new FrequencyTable();
+            final int[] businessTermIds;
+            int reviewCount;
+            // Increases with every review added, so a review never reuses the document index of an earlier one
+            int nextDocument;
+
+            BusinessCounts(int[] businessTermIds) {
+                this.businessTermIds = businessTermIds;
+            }
+        }
+
+        // Constructor
+        public Builder(List<Business> businesses) {
+            this(businesses, new TermDictionary());
+        }
+
+        private Builder(List<Business> businesses, TermDictionary dictionary) {
+            this.dictionary = dictionary;
+            this.businessesById = new HashMap<>(businesses.size() * 2);
+            for (Business business : businesses) {
+                businessesById.put(business.getBusiness_id(), business);
+            }
+        }
+
+        // Counts the terms of one review, returns false if the review belongs to an unknown business
+        public boolean addReview(Review review) {
+            Business business = businessesById.get(review.getBusiness_id());
+            if (business == null) {
+                return false;
+            }
+            long startTime = System.nanoTime();
+            BusinessCounts counts = countsFor(business);
+            calculator.countReviewTerms(counts.frequencyTable, counts.businessTermIds, review, counts.nextDocument++, dictionary, tokenizer);
+            counts.reviewCount++;
+            totalReviews++;
+            tokenizeNanos += System.nanoTime() - startTime;
+            return true;
+        }
+
+        // Takes back the counts of a review that was added earlier, e.g. because it changed or was deleted.
+        // The review may have been added to a different builder, counts can go negative until the builders are merged.
+        public boolean removeReview(Review review) {
+            Business business = businessesById.get(review.getBusiness_id());
+            if (business == null) {
+                return false;
+            }
+            long startTime = System.nanoTime();
+            BusinessCounts counts = countsFor(business);
+            FrequencyTable removed = new FrequencyTable();
+            calculator.countReviewTerms(removed, counts.businessTermIds, review, 0, dictionary, tokenizer);
+            removed.forEach((termId, termCount, documentCount) -> counts.frequencyTable.addCounts(termId, -termCount, -documentCount));
+            counts.reviewCount--;
+            totalReviews--;
+            tokenizeNanos += System.nanoTime() - startTime;
+            return true;
+        }
+
+        private BusinessCounts countsFor(Business business) {
+            return countsByBusiness.computeIfAbsent(business.getBusiness_id(),
+                    id -> new BusinessCounts(calculator.getBusinessTermIds(business, dictionary, tokenizer)));
+        }
+
+        // Number of reviews counted so far, including those of merged builders
+        public long getReviewCount() {
+            return totalReviews;
+        }
+
+        // Folds the counts of another builder into this one. Parallel ingest gives every worker its own builder,
+        // since a builder isn't thread-safe, and merges them at the end. Term IDs are remapped into this dictionary.
+        public Builder merge(Builder other) {
+            long startTime = System.nanoTime();
+            int[] termIdRemap = new int[other.dictionary.size()];
+            for (int termId = 0; termId < termIdRemap.length; termId++) {
+                termIdRemap[termId] = dictionary.idFor(other.dictionary.getTerm(termId));
+            }
+            for (Map.Entry<String, BusinessCounts> entry : other.countsByBusiness.entrySet()) {
+                BusinessCounts counts = countsFor(businessesById.get(entry.getKey()));
+                BusinessCounts otherCounts = entry.getValue();
+                otherCounts.frequencyTable.forEach((termId, termCount, documentCount) ->
+                        counts.frequencyTable.addCounts(termIdRemap[termId], termCount, documentCount));
+                counts.reviewCount += otherCounts.reviewCount;
+            }
+            totalReviews += other.totalReviews;
+            mergedTokenCount += other.tokenizer.getTokenCount() + other.mergedTokenCount;
+            tokenizeNanos += other.tokenizeNanos + (System.nanoTime() - startTime);
+            return this;
+        }
+
+        // Turns the collected counts into weighted vectors now that the corpus-wide document frequencies are known
+        public TfIdfVectorStore build() {
+            reportTokenizerThroughput(tokenizer.getTokenCount() + mergedTokenCount, tokenizeNanos);
+
+            // Number of reviews each term appears in, over the whole corpus
+            int[] documentFrequency = new int[dictionary.size()];
+            for (BusinessCounts counts : countsByBusiness.values()) {
+                counts.frequencyTable.forEach((termId, termCount, documentCount) -> {
+                    if (documentCount > 0) {
+                        documentFrequency[termId] += documentCount;
+                    }
+                });
+            }
+
+            Map<String, SparseVector> vectors = new HashMap<>(countsByBusiness.size() * 2);
+            WeightBuffer buffer = new WeightBuffer();
+            for (Map.Entry<String, BusinessCounts> entry : countsByBusiness.entrySet()) {
+                BusinessCounts counts = entry.getValue();
+                // Every review of this business was removed again
+                if (counts.reviewCount <= 0) {
+                    continue;
+                }
+                buffer.length = 0;
+                counts.frequencyTable.forEach((termId, termCount, documentCount) -> {
+                    // Terms that only occurred in removed reviews
+                    if (termCount <= 0 || documentFrequency[termId] <= 0) {
+                        return;
+                    }
+                    double tf = (double) termCount / counts.reviewCount;
+                    double idf = Math.log((double) totalReviews / documentFrequency[termId]);
+                    buffer.add(termId, tf * idf);
+                });
+                vectors.put(entry.getKey(), SparseVector.of(buffer.termIds, buffer.weights, buffer.length));
+            }
+            System.out.println("Computed TF-IDF vectors for " + vectors.size() + " businesses over " + dictionary.size() + " terms from " + totalReviews + " reviews.");
+            return new TfIdfVectorStore(dictionary, vectors);
+        }
+
+        // Saves the term counts so a later ingest can continue from them
+        public void writeCounts(String path) throws IOException {
+            File countsFile = new File(path);
+            File countsDir = countsFile.getParentFile();
+            if (countsDir != null && !countsDir.exists() && !countsDir.mkdirs()) {
+                throw new IOException("Failed to create vector data directory at " + countsDir.getAbsolutePath());
+            }
+            try (ObjectOutputStream out = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(countsFile)))) {
+                out.writeInt(COUNTS_MAGIC);
+                out.writeInt(COUNTS_VERSION);
+                out.writeObject(dictionary);
+                out.writeLong(totalReviews);
+                out.writeInt(countsByBusiness.size());
+                for (Map.Entry<String, BusinessCounts> entry : countsByBusiness.entrySet()) {
+                    BusinessCounts counts = entry.getValue();
+                    out.writeUTF(entry.getKey());
+                    out.writeInt(counts.reviewCount);
+                    List<int[]> terms = new ArrayList<>();
+                    counts.frequencyTable.forEach((termId, termCount, documentCount) -> {
+                        if (termCount > 0) {
+                            terms.add(new int[]{termId, termCount, documentCount});
+                        }
+                    });
+                    out.writeInt(terms.size());
+                    for (int[] term : terms) {
+                        out.writeInt(term[0]);
+                        out.writeInt(term[1]);
+                        out.writeInt(term[2]);
+                    }
+                }
+            }
+        }
+
+        // Loads term counts saved by writeCounts, the businesses must be the ones the counts were made for
+        public static Builder readCounts(String path, List<Business> businesses) throws IOException, ClassNotFoundException {
+            try (ObjectInputStream in = new ObjectInputStream(new BufferedInputStream(new FileInputStream(path)))) {
+                if (in.readInt() != COUNTS_MAGIC || in.readInt() != COUNTS_VERSION) {
+                    throw new IOException("Not a term counts file: " + path);
+                }
+                Builder builder = new Builder(businesses, (TermDictionary) in.readObject());
+                builder.totalReviews = in.readLong();
+                int businessCount = in.readInt();
+                for (int i = 0; i < businessCount; i++) {
+                    String businessId = in.readUTF();
+                    int reviewCount = in.readInt();
+                    Business business = builder.businessesById.get(businessId);
+                    if (business == null) {
+                        throw new IOException("Term counts are for a business that isn't loaded: " + businessId);
+                    }
+                    BusinessCounts counts = builder.countsFor(business);
+                    counts.reviewCount = reviewCount;
+                    int termCount = in.readInt();
+                    for (int t = 0; t < termCount; t++) {
+                        counts.frequencyTable.addCounts(in.readInt(), in.readInt(), in.readInt());
+                    }
+                }
+                return builder;
+            }
+        }
+    }
+
+    // Prints how many tokens per second the counting pass reached compared to the tokenizer's target
+    private static void reportTokenizerThroughput(long tokenCount, long elapsedNanos) {
+        if (elapsedNanos <= 0 || tokenCount == 0) {
+            return;
+        }
+        long tokensPerSecond = (long) (tokenCount / (elapsedNanos / 1_000_000_000.0));
+        System.out.println("Tokenized " + tokenCount + " tokens at " + tokensPerSecond + " tokens/sec (target " + Tokenizer.TARGET_TOKENS_PER_SECOND + ").");
+        if (tokensPerSecond < Tokenizer.TARGET_TOKENS_PER_SECOND) {
+            System.out.println("Tokenizer throughput is below target.");
+        }
+    }
+
+    // Returns the vector for a business, or an empty vector if the business has no reviews
+    public SparseVector getVector(String businessId) {
+        return vectors.getOrDefault(businessId, SparseVector.EMPTY);
+    }
+
+    public TermDictionary getDictionary() {
+        return dictionary;
+    }
+
+    public int size() {
+        return vectors.size();
+    }
+
+    // Writes the store to a file, creating the parent directory if needed
+    public void serializeToFile(String path) throws IOException {
+        File storeFile = new File(path);
+        File storeDir = storeFile.getParentFile();
+        if (storeDir != null && !storeDir.exists() && !storeDir.mkdirs()) {
+            throw new IOException("Failed to create vector data directory at " + storeDir.getAbsolutePath());
+        }
+        try (ObjectOutputStream oos = new ObjectOutputStream(new BufferedOutputStream(new FileOutputStream(storeFile)))) {
+            oos.writeObject(this);
+        }
+    }
+
+    // Loads a vector store from a file
+    public static TfIdfVectorStore deserializeFromFile(String path) throws IOException, ClassNotFoundException {
+        try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(new FileInputStream(path)))) {
+            return (TfIdfVectorStore) ois.readObject();
+        }
+    }
+}
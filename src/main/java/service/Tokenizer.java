@@ -0,0 +1,141 @@
+package main.java.service;
+
+import main.java.model.Review;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+// Single-pass tokenizer for review text. It lowercases, drops punctuation and filters stop words while
+// scanning the characters once, handing each token to a sink as a slice of a reused buffer, so no
+// intermediate Strings are made. Produces the same terms as the old regex/split preprocessing.
+public final class Tokenizer {
+    // Throughput the ingest is expected to reach, TfIdfVectorStore reports against it
+    public static final long TARGET_TOKENS_PER_SECOND = 10_000_000L;
+
+    // Typical list of stopWords that i found online
+    private static final String[] STOP_WORDS = {
+            "i", "me", "my", "myself", "we", "our", "ours", "ourselves", "you", "your", "yours",
+            "yourself", "yourselves", "he", "him", "his", "himself", "she", "her", "hers",
+            "herself", "it", "its", "itself", "they", "them", "their", "theirs", "themselves",
+            "what", "which", "who", "whom", "this", "that", "these", "those", "am", "is", "are",
+            "was", "were", "be", "been", "being", "have", "has", "had", "having", "do", "does",
+            "did", "doing", "a", "an", "the", "and", "but", "if", "or", "because", "as", "until",
+            "while", "of", "at", "by", "for", "with", "about", "against", "between", "into",
+            "through", "during", "before", "after", "above", "below", "to", "from", "up", "down",
+            "in", "out", "on", "off", "over", "under", "again", "further", "then", "once", "here",
+            "there", "when", "where", "why", "how", "all", "any", "both", "each", "few", "more",
+            "most", "other", "some", "such", "no", "nor", "not", "only", "own", "same", "so",
+            "than", "too", "very", "s", "t", "can", "will", "just", "don", "should", "now"
+    };
+
+    // Stop words as a static trie over 'a'-'z': children[node * 26 + letter] is the child node, 0 means none
+    private static final int[] STOP_WORD_CHILDREN;
+    private static final boolean[] STOP_WORD_ENDS;
+
+    static {
+        int maxNodes = 1;
+        for (String word : STOP_WORDS) {
+            maxNodes += word.length();
+        }
+        int[] children = new int[maxNodes * 26];
+        boolean[] ends = new boolean[maxNodes];
+        int nodeCount = 1;
+        for (String word : STOP_WORDS) {
+            int node = 0;
+            for (int i = 0; i < word.length(); i++) {
+                int slot = node * 26 + (word.charAt(i) - 'a');
+                if (children[slot] == 0) {
+                    children[slot] = nodeCount++;
+                }
+                node = children[slot];
+            }
+            ends[node] = true;
+        }
+        STOP_WORD_CHILDREN = Arrays.copyOf(children, nodeCount * 26);
+        STOP_WORD_ENDS = Arrays.copyOf(ends, nodeCount);
+    }
+
+    // Receives each token as the first length chars of buffer, the buffer is reused for the next token
+    public interface TokenSink {
+        void accept(char[] buffer, int length);
+    }
+
+    private char[] buffer = new char[64];
+    private long tokenCount;
+    // State of the token being scanned: its length so far, and the trie node while it could still be a stop word
+    // (-1 once it can't)
+    private int tokenLength;
+    private int stopWordNode;
+
+    // Splits text into lowercase alphanumeric tokens, optionally dropping stop words
+    public void tokenize(String text, boolean removeStopWords, TokenSink sink) {
+        startText();
+        for (int i = 0, n = text.length(); i < n; i++) {
+            scan(text.charAt(i), removeStopWords, sink);
+        }
+        scan(' ', removeStopWords, sink);
+    }
+
+    // Tokenizes a review's text, straight from the UTF-8 bytes when it's kept in an arena
+    public void tokenize(Review review, boolean removeStopWords, TokenSink sink) {
+        if (review.hasArenaText()) {
+            tokenize(review.getTextArena().buffer(), review.getTextOffset(), review.getTextLength(), removeStopWords, sink);
+        } else {
+            tokenize(review.getText(), removeStopWords, sink);
+        }
+    }
+
+    // Same as tokenize(String), but over UTF-8 bytes without decoding them. Every byte of a multi-byte character
+    // is >= 0x80 and gets dropped, just like the non-ASCII chars are, so both produce the same tokens.
+    public void tokenize(ByteBuffer utf8, int offset, int byteLength, boolean removeStopWords, TokenSink sink) {
+        startText();
+        for (int i = offset, n = offset + byteLength; i < n; i++) {
+            scan((char) (utf8.get(i) & 0xFF), removeStopWords, sink);
+        }
+        scan(' ', removeStopWords, sink);
+    }
+
+    private void startText() {
+        tokenLength = 0;
+        stopWordNode = 0;
+    }
+
+    // Classifies one character for both overloads: letters and digits extend the token, whitespace ends it
+    private void scan(char c, boolean removeStopWords, TokenSink sink) {
+        if (c >= 'A' && c <= 'Z') {
+            c += 'a' - 'A';
+        }
+        if ((c >= 'a' && c <= 'z') || (c >= '0' && c <= '9')) {
+            if (tokenLength == buffer.length) {
+                buffer = Arrays.copyOf(buffer, tokenLength * 2);
+            }
+            buffer[tokenLength++] = c;
+            if (stopWordNode >= 0 && c >= 'a') {
+                int child = STOP_WORD_CHILDREN[stopWordNode * 26 + (c - 'a')];
+                stopWordNode = child == 0 ? -1 : child;
+            } else {
+                stopWordNode = -1;
+            }
+        } else if (isWhitespace(c)) {
+            if (tokenLength > 0) {
+                if (!(removeStopWords && stopWordNode > 0 && STOP_WORD_ENDS[stopWordNode])) {
+                    sink.accept(buffer, tokenLength);
+                    tokenCount++;
+                }
+                tokenLength = 0;
+                stopWordNode = 0;
+            }
+        }
+        // Any other character is dropped, joining the letters around it like the old regex did
+    }
+
+    // Whitespace as matched by the regex \s
+    private static boolean isWhitespace(char c) {
+        return c == ' ' || c == '\t' || c == '\n' || c == '\u000B' || c == '\f' || c == '\r';
+    }
+
+    // Returns the number of tokens handed to sinks so far
+    public long getTokenCount() {
+        return tokenCount;
+    }
+}
@@ -0,0 +1,128 @@
+package main.java.service;
+
+import java.util.*;
+
+// Bounded min-heap that keeps the k highest scoring items seen so far.
+// The root is the worst item kept, so a new item only has to beat the root to get in.
+public class TopKHeap<T> {
+    private final int capacity;
+    private final Object[] items;
+    private final double[] scores;
+    private int size;
+
+    // Constructor
+    public TopKHeap(int capacity) {
+        this.capacity = capacity;
+        this.items = new Object[capacity];
+        this.scores = new double[capacity];
+    }
+
+    // Offers an item, keeping it only if it is among the k best so far
+    public void offer(T item, double score) {
+        if (capacity == 0 || Double.isNaN(score)) {
+            return;
+        }
+        if (size < capacity) {
+            items[size] = item;
+            scores[size] = score;
+            siftUp(size++);
+        } else if (score > scores[0]) {
+            items[0] = item;
+            scores[0] = score;
+            siftDown(0);
+        }
+    }
+
+    // Adds every item of another heap to this one, used to combine the heaps of parallel workers
+    @SuppressWarnings("unchecked")
+    public TopKHeap<T> merge(TopKHeap<T> other) {
+        for (int i = 0; i < other.size; i++) {
+            offer((T) other.items[i], other.scores[i]);
+        }
+        return this;
+    }
+
+    // Returns the lowest score kept, which is the score to beat once the heap is full
+    public double minScore() {
+        return size == 0 ? Double.NEGATIVE_INFINITY : scores[0];
+    }
+
+    public boolean isFull() {
+        return size == capacity;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // Returns the kept items from best to worst
+    @SuppressWarnings("unchecked")
+    public List<T> toSortedList() {
+        List<T> sorted = new ArrayList<>(size);
+        for (int index : sortedOrder()) {
+            sorted.add((T) items[index]);
+        }
+        return sorted;
+    }
+
+    // Returns the kept scores from best to worst, in the same order as toSortedList
+    public double[] toSortedScores() {
+        Integer[] order = sortedOrder();
+        double[] sorted = new double[size];
+        for (int i = 0; i < size; i++) {
+            sorted[i] = scores[order[i]];
+        }
+        return sorted;
+    }
+
+    // Heap positions ordered from the highest score to the lowest
+    private Integer[] sortedOrder() {
+        Integer[] order = new Integer[size];
+        for (int i = 0; i < size; i++) {
+            order[i] = i;
+        }
+        Arrays.sort(order, (a, b) -> Double.compare(scores[b], scores[a]));
+        return order;
+    }
+
+    // Moves the entry at index up until its parent is not larger
+    private void siftUp(int index) {
+        while (index > 0) {
+            int parent = (index - 1) >>> 1;
+            if (scores[parent] <= scores[index]) {
+                break;
+            }
+            swap(index, parent);
+            index = parent;
+        }
+    }
+
+    // Moves the entry at index down until both children are not smaller
+    private void siftDown(int index) {
+        while (true) {
+            int smallest = index;
+            int left = 2 * index + 1;
+            int right = left + 1;
+            if (left < size && scores[left] < scores[smallest]) {
+                smallest = left;
+            }
+            if (right < size && scores[right] < scores[smallest]) {
+                smallest = right;
+            }
+            if (smallest == index) {
+                return;
+            }
+            swap(index, smallest);
+            index = smallest;
+        }
+    }
+
+    private void swap(int a, int b) {
+        Object item = items[a];
+        items[a] = items[b];
+        items[b] = item;
+        double score = scores[a];
+        scores[a] = scores[b];
+        scores[b] = score;
+    }
+}
@@ -0,0 +1,243 @@
+package main.java.service;
+
+import main.java.model.Business;
+
+import java.util.*;
+
+// Typo-tolerant lookup of business names. Every distinct lowercase name is split into trigrams (with two spaces in
+// front and one behind, so the start and end of the name count too) and the index maps each trigram to the names
+// that contain it. A query only verifies names that share enough trigrams with it: one edit changes at most three
+// trigrams, so a name within k edits still shares all but 3k of the query's trigrams. The survivors are checked
+// with a Levenshtein distance that gives up as soon as it goes over k.
+public class TrigramIndex {
+    public static final int DEFAULT_LIMIT = 5;
+
+    // Lowercase names as the name hash table stores them, and the review count of all locations of each
+    private final String[] names;
+    private final long[] reviewCounts;
+    // Postings per trigram ID: the names containing it, in the order of names
+    private final IncrementalHashMap trigramIds;
+    private final int[] postingStarts;
+    private final int[] postingNames;
+    // Per-thread scratch space so a query only touches the counters of the names it sees
+    private final ThreadLocal<int[]> sharedScratch;
+    private final ThreadLocal<int[]> touchedScratch;
+
+    // A name within the allowed edits of a query
+    public static final class Match {
+        private final String name;
+        private final int distance;
+        private final long reviewCount;
+
+        Match(String name, int distance, long reviewCount) {
+            this.name = name;
+            this.distance = distance;
+            this.reviewCount = reviewCount;
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        public int getDistance() {
+            return distance;
+        }
+
+        public long getReviewCount() {
+            return reviewCount;
+        }
+
+        @Override
+        public String toString() {
+            return name + " (" + distance + " edit(s), " + reviewCount + " reviews)";
+        }
+    }
+
+    // Constructor, builds the postings over the names of the given businesses
+    public TrigramIndex(List<Business> businesses) {
+        long start = System.nanoTime();
+        Map<String, Integer> nameIds = new HashMap<>();
+        List<String> nameList = new ArrayList<>();
+        List<Long> counts = new ArrayList<>();
+        for (Business business : businesses) {
+            if (business.getName() == null) {
+                continue;
+            }
+            String name = normalize(business.getName());
+            Integer nameId = nameIds.get(name);
+            if (nameId == null) {
+                nameId = nameList.size();
+                nameIds.put(name, nameId);
+                nameList.add(name);
+                counts.add(0L);
+            }
+            counts.set(nameId, counts.get(nameId) + business.getReview_count());
+        }
+        this.names = nameList.toArray(new String[0]);
+        this.reviewCounts = new long[names.length];
+        for (int i = 0; i < names.length; i++) {
+            reviewCounts[i] = counts.get(i);
+        }
+
+        // Number the trigrams and count the postings of each so the lists can be laid out in one array
+        this.trigramIds = new IncrementalHashMap();
+        long[][] nameTrigrams = new long[names.length][];
+        int[] postingCounts = new int[16];
+        for (int nameId = 0; nameId < names.length; nameId++) {
+            nameTrigrams[nameId] = distinctTrigrams(names[nameId]);
+            for (long trigram : nameTrigrams[nameId]) {
+                int trigramId = trigramIds.get(trigram, -1);
+                if (trigramId < 0) {
+                    trigramId = trigramIds.size();
+                    trigramIds.put(trigram, trigramId);
+                    if (trigramId == postingCounts.length) {
+                        postingCounts = Arrays.copyOf(postingCounts, trigramId * 2);
+                    }
+                }
+                postingCounts[trigramId]++;
+            }
+        }
+        int trigramCount = trigramIds.size();
+        this.postingStarts = new int[trigramCount + 1];
+        for (int trigramId = 0; trigramId < trigramCount; trigramId++) {
+            postingStarts[trigramId + 1] = postingStarts[trigramId] + postingCounts[trigramId];
+        }
+        this.postingNames = new int[postingStarts[trigramCount]];
+        int[] filled = Arrays.copyOf(postingStarts, trigramCount);
+        for (int nameId = 0; nameId < names.length; nameId++) {
+            for (long trigram : nameTrigrams[nameId]) {
+                postingNames[filled[trigramIds.get(trigram, -1)]++] = nameId;
+            }
+        }
+        this.sharedScratch = ThreadLocal.withInitial(() -> new int[names.length]);
+        this.touchedScratch = ThreadLocal.withInitial(() -> new int[names.length]);
+        System.out.println("Built trigram index over " + names.length + " names with " + trigramCount + " trigrams and "
+                + postingNames.length + " postings in " + (System.nanoTime() - start) / 1_000_000 + " ms.");
+    }
+
+    // Names are matched the same way the name hash table matches them
+    private static String normalize(String name) {
+        return name.toLowerCase();
+    }
+
+    // Edits allowed for a query, more for longer queries since they have more room for typos
+    static int maxEdits(int queryLength) {
+        if (queryLength <= 4) {
+            return 1;
+        }
+        return queryLength <= 8 ? 2 : 3;
+    }
+
+    // Returns the names closest to the query, fewest edits first and then most reviewed, or an empty list if
+    // none is within the allowed number of edits
+    public List<Match> findClosest(String query, int limit) {
+        long start = System.nanoTime();
+        String normalizedQuery = normalize(query.strip());
+        if (normalizedQuery.isEmpty()) {
+            return Collections.emptyList();
+        }
+        int maxEdits = maxEdits(normalizedQuery.length());
+        long[] queryTrigrams = distinctTrigrams(normalizedQuery);
+        // Names sharing fewer trigrams are more than maxEdits away, at least one is needed to be a candidate at all
+        int minShared = Math.max(1, queryTrigrams.length - 3 * maxEdits);
+
+        int[] shared = sharedScratch.get();
+        int[] touched = touchedScratch.get();
+        int touchedCount = 0;
+        for (long trigram : queryTrigrams) {
+            int trigramId = trigramIds.get(trigram, -1);
+            if (trigramId < 0) {
+                continue;
+            }
+            for (int i = postingStarts[trigramId]; i < postingStarts[trigramId + 1]; i++) {
+                int nameId = postingNames[i];
+                if (shared[nameId]++ == 0) {
+                    touched[touchedCount++] = nameId;
+                }
+            }
+        }
+
+        List<Match> matches = new ArrayList<>();
+        int candidates = 0;
+        for (int t = 0; t < touchedCount; t++) {
+            int nameId = touched[t];
+            String name = names[nameId];
+            if (shared[nameId] >= minShared && Math.abs(name.length() - normalizedQuery.length()) <= maxEdits) {
+                candidates++;
+                int distance = boundedLevenshtein(normalizedQuery, name, maxEdits);
+                if (distance <= maxEdits) {
+                    matches.add(new Match(name, distance, reviewCounts[nameId]));
+                }
+            }
+            // Reset as we go so the scratch array is clean for the next query
+            shared[nameId] = 0;
+        }
+        matches.sort(Comparator.comparingInt(Match::getDistance)
+                .thenComparing(Comparator.comparingLong(Match::getReviewCount).reversed())
+                .thenComparing(Match::getName));
+        List<Match> closest = matches.size() > limit ? new ArrayList<>(matches.subList(0, limit)) : matches;
+        System.out.println("Fuzzy lookup for '" + normalizedQuery + "' verified " + candidates + " of " + touchedCount
+                + " names sharing a trigram, found " + matches.size() + " within " + maxEdits + " edit(s) in "
+                + (System.nanoTime() - start) / 1000 + " us: " + closest);
+        return closest;
+    }
+
+    // Returns the number of distinct names
+    public int size() {
+        return names.length;
+    }
+
+    // Trigrams of the padded name, each packed as three 16-bit chars, without repeats
+    static long[] distinctTrigrams(String name) {
+        String padded = "  " + name + " ";
+        long[] trigrams = new long[padded.length() - 2];
+        for (int i = 0; i < trigrams.length; i++) {
+            trigrams[i] = (long) padded.charAt(i) << 32 | (long) padded.charAt(i + 1) << 16 | padded.charAt(i + 2);
+        }
+        Arrays.sort(trigrams);
+        int distinct = 0;
+        for (int i = 0; i < trigrams.length; i++) {
+            if (i == 0 || trigrams[i] != trigrams[i - 1]) {
+                trigrams[distinct++] = trigrams[i];
+            }
+        }
+        return Arrays.copyOf(trigrams, distinct);
+    }
+
+    // Levenshtein distance between a and b, or maxEdits + 1 as soon as it's clear the distance is over maxEdits.
+    // Only the diagonal band of width 2 * maxEdits + 1 is computed, cells outside it are over the bound anyway.
+    static int boundedLevenshtein(String a, String b, int maxEdits) {
+        if (Math.abs(a.length() - b.length()) > maxEdits) {
+            return maxEdits + 1;
+        }
+        int over = maxEdits + 1;
+        int[] previous = new int[b.length() + 1];
+        int[] current = new int[b.length() + 1];
+        for (int j = 0; j <= b.length(); j++) {
+            previous[j] = Math.min(j, over);
+        }
+        for (int i = 1; i <= a.length(); i++) {
+            int from = Math.max(1, i - maxEdits);
+            int to = Math.min(b.length(), i + maxEdits);
+            current[from - 1] = from == 1 ? Math.min(i, over) : over;
+            int rowMinimum = current[from - 1];
+            for (int j = from; j <= to; j++) {
+                int substitution = previous[j - 1] + (a.charAt(i - 1) == b.charAt(j - 1) ? 0 : 1);
+                int deletion = previous[j] + 1;
+                int insertion = current[j - 1] + 1;
+                current[j] = Math.min(over, Math.min(substitution, Math.min(deletion, insertion)));
+                rowMinimum = Math.min(rowMinimum, current[j]);
+            }
+            if (to < b.length()) {
+                current[to + 1] = over;
+            }
+            if (rowMinimum > maxEdits) {
+                return over;
+            }
+            int[] swap = previous;
+            previous = current;
+            current = swap;
+        }
+        return previous[b.length()];
+    }
+}
@@ -0,0 +1,99 @@
+package test.java.controller;
+
+import main.java.controller.SearchController;
+import main.java.loader.NamePrefixIndex;
+import main.java.loader.PersistentHashTable;
+import main.java.model.Business;
+import org.junit.jupiter.api.Test;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Name lookups that don't have an exact match: misspelled names go through the trigram index, cut-off names
+// through the name prefix index
+class SearchControllerTest {
+    private static Business business(String id, String name, int reviewCount) {
+        return new Business(id, name, "1 Main St", "Tucson", "AZ", "85701", 32.2, -110.9, 4.0f, reviewCount, 1,
+                new HashMap<>(), "Coffee & Tea", new HashMap<>(), null);
+    }
+
+    private static List<Business> sampleBusinesses() {
+        return List.of(business("sb1", "Starbucks", 120), business("sb2", "Starbucks", 80),
+                business("star", "Starbright Bakery", 15), business("dd1", "Dunkin'", 40),
+                business("ep1", "Epic Cafe", 60));
+    }
+
+    // Controller over the sample businesses with the name table and prefix index written to a temp directory
+    private static SearchController controller(Path directory) throws IOException {
+        List<Business> businesses = sampleBusinesses();
+        PersistentHashTable.Builder builder = new PersistentHashTable.Builder();
+        for (Business business : businesses) {
+            builder.put(business.getName().toLowerCase(), business.getBusiness_id());
+        }
+        String mapPath = directory.resolve("businesses.map").toString();
+        builder.writeToFile(mapPath);
+        String indexPath = directory.resolve("names.npx").toString();
+        NamePrefixIndex.write(businesses, indexPath, NamePrefixIndex.DEFAULT_TOP_COUNT);
+
+        SearchController controller = new SearchController(businesses, null, null, null,
+                PersistentHashTable.openMapped(mapPath));
+        controller.setNameIndex(NamePrefixIndex.open(indexPath));
+        return controller;
+    }
+
+    private static Set<String> ids(List<Business> businesses) {
+        return businesses.stream().map(Business::getBusiness_id).collect(Collectors.toSet());
+    }
+
+    private static void deleteDirectory(Path directory) {
+        File[] files = directory.toFile().listFiles();
+        if (files != null) {
+            for (File file : files) {
+                file.delete();
+            }
+        }
+        directory.toFile().delete();
+    }
+
+    @Test
+    void misspelledNameFindsEveryLocationOfTheClosestName() throws IOException {
+        Path directory = Files.createTempDirectory("search-controller-test");
+        try {
+            SearchController controller = controller(directory);
+            assertEquals(Set.of("sb1", "sb2"), ids(controller.findBusinessesByApproximateName("starbuks")));
+            assertEquals(Set.of("ep1"), ids(controller.findBusinessesByApproximateName("epik cafe")));
+        } finally {
+            deleteDirectory(directory);
+        }
+    }
+
+    @Test
+    void truncatedNameFindsTheMostReviewedNameItStarts() throws IOException {
+        Path directory = Files.createTempDirectory("search-controller-test");
+        try {
+            SearchController controller = controller(directory);
+            // Too many letters missing for the trigram index, "Starbright Bakery" starts the same but has fewer reviews
+            assertEquals(Set.of("sb1", "sb2"), ids(controller.findBusinessesByApproximateName("starb")));
+            assertEquals(Set.of("star"), ids(controller.findBusinessesByApproximateName("starbri")));
+            assertEquals(Set.of("dd1"), ids(controller.findBusinessesByApproximateName("Dun")));
+        } finally {
+            deleteDirectory(directory);
+        }
+    }
+
+    @Test
+    void unknownNameFindsNothing() throws IOException {
+        Path directory = Files.createTempDirectory("search-controller-test");
+        try {
+            assertTrue(controller(directory).findBusinessesByApproximateName("pizza palace").isEmpty());
+        } finally {
+            deleteDirectory(directory);
+        }
+    }
+}
@@ -0,0 +1,143 @@
+package test.java.loader;
+
+import main.java.loader.RecordCodec;
+import main.java.model.Business;
+import main.java.model.Review;
+import main.java.model.TextArena;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+// Round trips through the record codec, every field of every record has to come back as it went in
+class RecordCodecTest {
+    private static final int BUSINESS_COUNT = 200;
+    private static final int NEIGHBOR_COUNT = 4;
+
+    // Sample businesses with known and unknown attributes, null values and a non-ASCII name
+    private static List<Business> sampleBusinesses() {
+        Random random = new Random(14);
+        List<String> knownAttributes = List.of("BusinessAcceptsCreditCards", "WiFi", "GoodForKids", "Open24Hours");
+        List<Business> businesses = new ArrayList<>();
+        for (int i = 0; i < BUSINESS_COUNT; i++) {
+            Map<String, Boolean> attributes = new HashMap<>();
+            attributes.put(knownAttributes.get(random.nextInt(knownAttributes.size())), random.nextBoolean());
+            attributes.put("CustomAttribute" + random.nextInt(3), null);
+            Map<String, String> hours = new HashMap<>();
+            hours.put("Monday", "9:0-17:0");
+            hours.put("Saturday", "10:0-14:30");
+            businesses.add(new Business("biz" + i, "Café Nr. " + i, i + " Main St", "Tucson", "AZ", "85701",
+                    32 + random.nextDouble(), -110 - random.nextDouble(), 0.5f * random.nextInt(11), random.nextInt(500),
+                    random.nextInt(2), attributes, "Coffee & Tea, Food, Cafes", hours, i % 2 == 0 ? null : "555-0100"));
+        }
+        // Link every business to a few others so the neighbour graph is in the records too
+        for (int i = 0; i < businesses.size(); i++) {
+            for (int j = 1; j <= NEIGHBOR_COUNT; j++) {
+                businesses.get(i).addNeighbor(businesses.get((i + j) % businesses.size()), j * 0.25);
+            }
+        }
+        return businesses;
+    }
+
+    private static List<Review> sampleReviews() {
+        Random random = new Random(15);
+        List<Review> reviews = new ArrayList<>();
+        for (int i = 0; i < BUSINESS_COUNT; i++) {
+            for (int j = 0; j < 5; j++) {
+                reviews.add(new Review("rev" + i + "_" + j, "user" + random.nextInt(1000), "biz" + i, 1 + random.nextInt(5),
+                        "2018-07-07 22:09:11", "Great café, friendly staff and the pastries are fresh every morning. " + j,
+                        random.nextInt(10), random.nextInt(3) - 1, random.nextInt(5)));
+            }
+        }
+        return reviews;
+    }
+
+    @Test
+    void businessesKeepEveryFieldAndNeighbour() throws IOException {
+        List<Business> businesses = sampleBusinesses();
+        Map<String, Business> decodedById = new HashMap<>();
+        RecordCodec.NeighborLinks links = new RecordCodec.NeighborLinks();
+        for (Business business : businesses) {
+            Business decoded = RecordCodec.decodeBusiness(RecordCodec.encodeBusiness(business), links);
+            decodedById.put(decoded.getBusiness_id(), decoded);
+        }
+        links.resolve(decodedById::get);
+
+        for (Business expected : businesses) {
+            Business actual = decodedById.get(expected.getBusiness_id());
+            assertNotNull(actual, expected.getBusiness_id());
+            assertBusinessEquals(expected, actual);
+        }
+    }
+
+    @Test
+    void reviewsKeepEveryField() throws IOException {
+        for (Review expected : sampleReviews()) {
+            assertReviewEquals(expected, RecordCodec.decodeReview(RecordCodec.encodeReview(expected)));
+        }
+    }
+
+    @Test
+    void reviewsDecodedFromAnArenaKeepEveryField() throws IOException {
+        for (Review expected : sampleReviews()) {
+            byte[] record = RecordCodec.encodeReview(expected);
+            // Put the record somewhere in the middle of the buffer, like in a block read from the store
+            ByteBuffer buffer = ByteBuffer.allocateDirect(record.length + 7);
+            buffer.put(7, record);
+            TextArena arena = TextArena.wrap(buffer);
+            assertReviewEquals(expected, RecordCodec.decodeReview(arena, 7, record.length));
+        }
+    }
+
+    @Test
+    void truncatedRecordIsRejected() {
+        byte[] record = RecordCodec.encodeBusiness(sampleBusinesses().get(0));
+        assertThrows(IOException.class, () -> RecordCodec.decodeBusiness(Arrays.copyOf(record, record.length / 2),
+                new RecordCodec.NeighborLinks()));
+    }
+
+    private static void assertBusinessEquals(Business expected, Business actual) {
+        String id = expected.getBusiness_id();
+        assertEquals(expected.getBusiness_id(), actual.getBusiness_id());
+        assertEquals(expected.getName(), actual.getName(), id);
+        assertEquals(expected.getAddress(), actual.getAddress(), id);
+        assertEquals(expected.getCity(), actual.getCity(), id);
+        assertEquals(expected.getState(), actual.getState(), id);
+        assertEquals(expected.getPostal_code(), actual.getPostal_code(), id);
+        assertEquals(expected.getLatitude(), actual.getLatitude(), id);
+        assertEquals(expected.getLongitude(), actual.getLongitude(), id);
+        assertEquals(expected.getStars(), actual.getStars(), id);
+        assertEquals(expected.getReview_count(), actual.getReview_count(), id);
+        assertEquals(expected.is_open(), actual.is_open(), id);
+        assertEquals(expected.getAttributes(), actual.getAttributes(), id);
+        assertEquals(expected.getCategories(), actual.getCategories(), id);
+        assertEquals(expected.getHours(), actual.getHours(), id);
+        assertEquals(expected.getPhoneNumber(), actual.getPhoneNumber(), id);
+        assertEquals(neighborDistances(expected), neighborDistances(actual), id);
+    }
+
+    // Neighbours by business ID, the decoded neighbours are other objects than the ones that were encoded
+    private static Map<String, Double> neighborDistances(Business business) {
+        Map<String, Double> distances = new HashMap<>();
+        for (Map.Entry<Business, Double> neighbor : business.getNeighbors().entrySet()) {
+            distances.put(neighbor.getKey().getBusiness_id(), neighbor.getValue());
+        }
+        return distances;
+    }
+
+    private static void assertReviewEquals(Review expected, Review actual) {
+        String id = expected.getReview_id();
+        assertEquals(expected.getReview_id(), actual.getReview_id());
+        assertEquals(expected.getUser_id(), actual.getUser_id(), id);
+        assertEquals(expected.getBusiness_id(), actual.getBusiness_id(), id);
+        assertEquals(expected.getStars(), actual.getStars(), id);
+        assertEquals(expected.getDate(), actual.getDate(), id);
+        assertEquals(expected.getText(), actual.getText(), id);
+        assertEquals(expected.getUseful(), actual.getUseful(), id);
+        assertEquals(expected.getFunny(), actual.getFunny(), id);
+        assertEquals(expected.getCool(), actual.getCool(), id);
+    }
+}
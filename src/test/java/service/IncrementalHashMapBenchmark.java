@@ -0,0 +1,74 @@
+package test.java.service;
+
+import main.java.service.IncrementalHashMap;
+
+import java.util.Arrays;
+import java.util.Random;
+
+// Fills maps of 1k to 10M random keys and times lookups of keys that are in the map and keys that aren't, to show
+// the cost per lookup stays about the same as the map grows. Also prints how long puts take at the 99.99th
+// percentile and at worst; the worst case is the new table being allocated (and zeroed by the JVM) or a GC, never
+// a full rehash. Needs about 1GB of heap for the 10M run. Not a test, run it by hand: the optional argument is the
+// largest key count.
+public class IncrementalHashMapBenchmark {
+    private static final int LOOKUPS = 2_000_000;
+
+    // Lookup results are summed in here so the JIT can't drop the timed loops
+    private static volatile long sink;
+
+    public static void main(String[] args) {
+        int maxKeys = args.length > 0 ? Integer.parseInt(args[0]) : 10_000_000;
+        System.out.printf("%10s %10s %11s %15s %12s %10s%n", "keys", "hit ns/op", "miss ns/op", "p99.99 put ns",
+                "max put us", "capacity");
+        for (int keyCount = 1000; keyCount <= maxKeys; keyCount *= 10) {
+            Random random = new Random(keyCount);
+            long[] inserted = new long[keyCount];
+            int[] putNanos = new int[keyCount];
+            IncrementalHashMap map = new IncrementalHashMap();
+            for (int i = 0; i < keyCount; i++) {
+                inserted[i] = random.nextLong();
+                long start = System.nanoTime();
+                map.put(inserted[i], i);
+                putNanos[i] = (int) Math.min(Integer.MAX_VALUE, System.nanoTime() - start);
+            }
+            Arrays.sort(putNanos);
+
+            // Lookup order is picked up front so the random number generator isn't part of the timing
+            int[] order = new int[LOOKUPS];
+            long[] absent = new long[LOOKUPS];
+            for (int i = 0; i < LOOKUPS; i++) {
+                order[i] = random.nextInt(keyCount);
+                absent[i] = random.nextLong();
+            }
+
+            long checksum = 0;
+            long hitNanos = Long.MAX_VALUE;
+            long missNanos = Long.MAX_VALUE;
+            // Best of a few rounds, the first ones also warm up the JIT
+            for (int round = 0; round < 5; round++) {
+                long start = System.nanoTime();
+                for (int i = 0; i < LOOKUPS; i++) {
+                    checksum += map.get(inserted[order[i]], -1);
+                }
+                hitNanos = Math.min(hitNanos, System.nanoTime() - start);
+                start = System.nanoTime();
+                for (int i = 0; i < LOOKUPS; i++) {
+                    checksum += map.get(absent[i], 0);
+                }
+                missNanos = Math.min(missNanos, System.nanoTime() - start);
+            }
+            sink += checksum;
+
+            for (int i = 0; i < keyCount; i++) {
+                int value = map.get(inserted[i], -1);
+                // Random longs can repeat, the later put wins
+                if (value < 0 || inserted[value] != inserted[i]) {
+                    throw new IllegalStateException("Wrong value for key " + inserted[i]);
+                }
+            }
+            System.out.printf("%10d %10.1f %11.1f %15d %12.1f %10d%n", keyCount, (double) hitNanos / LOOKUPS,
+                    (double) missNanos / LOOKUPS, putNanos[(int) (keyCount * 0.9999)], putNanos[keyCount - 1] / 1000.0,
+                    map.capacity());
+        }
+    }
+}